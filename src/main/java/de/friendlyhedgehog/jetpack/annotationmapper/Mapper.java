@@ -243,7 +243,7 @@ public class Mapper {
     }
 
     private String getTerminalValue(Node<Symbol> childNode) {
-        if (childNode.getValue() instanceof Symbol.Terminal(var text)) {
+        if (childNode.getValue() instanceof Symbol.Terminal(var text, var _)) {
             return text;
         } else {
             List<Node<Symbol>> grandChildren = childNode.getChildren();
@@ -251,7 +251,7 @@ public class Mapper {
                     grandChildren,
                     "Expected either Terminal value or node with single child"
             );
-            if (grandChild.getValue() instanceof Symbol.Terminal(var text)) {
+            if (grandChild.getValue() instanceof Symbol.Terminal(var text, var _)) {
                 return text;
             }
             throw new RuntimeException("Expected either Child to be terminal or have one terminal grandchild, got: " + childNode);
@@ -0,0 +1,163 @@
+package de.friendlyhedgehog.jetpack.datatypes;
+
+import de.friendlyhedgehog.jetpack.util.Check;
+
+import java.util.Arrays;
+
+/**
+ * Memo table keyed by a rule id and a position. Both are packed into one long, the entries are stored in an open
+ * addressing table with linear probing. Every entry is an int, optionally accompanied by a second int, the payload.
+ * The payloads are only allocated once the first one is stored. The table holds no object references at all, neither
+ * lookups nor inserts of existing keys allocate.
+ */
+public class PackedMemoTable {
+
+    /**
+     * Returned for keys without entry or entries without payload, can't be stored.
+     */
+    public static final int ABSENT = Integer.MIN_VALUE;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private long[] keys;
+    private int[] values;
+    private int[] payloads;
+    private int size;
+    private int shift;
+
+    private PackedMemoTable(int capacity) {
+        allocate(Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1);
+    }
+
+    public static PackedMemoTable of() {
+        return new PackedMemoTable(DEFAULT_CAPACITY);
+    }
+
+    public static PackedMemoTable withExpectedSize(int expectedSize) {
+        return new PackedMemoTable(expectedSize * 2);
+    }
+
+    /**
+     * @return the entry or {@link #ABSENT}
+     */
+    public int get(int id, int position) {
+        return values[find(key(id, position))];
+    }
+
+    /**
+     * @return the payload of the entry or {@link #ABSENT} if there is none
+     */
+    public int getPayload(int id, int position) {
+        return payloads == null ? ABSENT : payloads[find(key(id, position))];
+    }
+
+    /**
+     * Stores an entry without payload, replacing the payload of a previous entry.
+     */
+    public void insert(int id, int position, int value) {
+        insert(id, position, value, ABSENT);
+    }
+
+    public void insert(int id, int position, int value, int payload) {
+        Check.require(value != ABSENT, "Can't store the absent marker in memo table");
+        long key = key(id, position);
+        int slot = find(key);
+        if (payload != ABSENT && payloads == null) {
+            payloads = absent(keys.length);
+        }
+        if (payloads != null) {
+            payloads[slot] = payload;
+        }
+        boolean isNew = values[slot] == ABSENT;
+        keys[slot] = key;
+        values[slot] = value;
+        if (isNew && ++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes the entries of all ids before the position. The table is rebuilt with a capacity fitting the remaining
+     * entries.
+     */
+    public void removeBefore(int position) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        int[] oldPayloads = payloads;
+        int remaining = 0;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldValues[i] != ABSENT && position(oldKeys[i]) >= position) {
+                ++remaining;
+            }
+        }
+        allocate(Integer.highestOneBit(Math.max(remaining * 2, 16) - 1) << 1);
+        payloads = oldPayloads == null ? null : absent(keys.length);
+        size = remaining;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldValues[i] != ABSENT && position(oldKeys[i]) >= position) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                if (oldPayloads != null) {
+                    payloads[slot] = oldPayloads[i];
+                }
+            }
+        }
+    }
+
+    private int find(long key) {
+        int slot = slot(key);
+        while (values[slot] != ABSENT && keys[slot] != key) {
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        int[] oldPayloads = payloads;
+        allocate(oldKeys.length * 2);
+        if (oldPayloads != null) {
+            payloads = absent(keys.length);
+        }
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldValues[i] != ABSENT) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                if (oldPayloads != null) {
+                    payloads[slot] = oldPayloads[i];
+                }
+            }
+        }
+    }
+
+    private void allocate(int tableSize) {
+        keys = new long[tableSize];
+        values = absent(tableSize);
+        shift = 64 - Integer.numberOfTrailingZeros(tableSize);
+    }
+
+    private static int[] absent(int tableSize) {
+        int[] table = new int[tableSize];
+        Arrays.fill(table, ABSENT);
+        return table;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private static long key(int id, int position) {
+        return ((long) id << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    private static int position(long key) {
+        return (int) key;
+    }
+}
@@ -76,9 +76,17 @@ public sealed interface Expression permits Symbol, Operator {
         return new Symbol.Terminal(terminal);
     }
 
+    static Expression terminal(String terminal, boolean caseSensitive) {
+        return new Symbol.Terminal(terminal, caseSensitive);
+    }
+
     static Expression terminalLiteral(String terminal) {
+        return terminalLiteral(terminal, false);
+    }
+
+    static Expression terminalLiteral(String terminal, boolean caseSensitive) {
         Check.requireNotEmpty(terminal);
-        return new Symbol.Terminal(java.util.regex.Pattern.quote(terminal));
+        return new Symbol.Terminal(java.util.regex.Pattern.quote(terminal), caseSensitive);
     }
 
     static Expression orderedChoice(Expression firstChoice, Expression secondChoice) {
@@ -108,6 +116,18 @@ public sealed interface Expression permits Symbol, Operator {
         return new Operator.And(expression);
     }
 
+    static Expression cut() {
+        return new Operator.Cut();
+    }
+
+    static Expression precedence(Expression operand, Operator.Precedence.Level... levels) {
+        return new Operator.Precedence(operand, List.of(levels));
+    }
+
+    static Operator.Precedence.Level level(Operator.Precedence.Fixity fixity, Expression... operators) {
+        return new Operator.Precedence.Level(fixity, List.of(operators));
+    }
+
     static Expression empty() {
         return Symbol.empty();
     }
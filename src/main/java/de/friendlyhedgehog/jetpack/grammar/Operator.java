@@ -2,6 +2,10 @@ package de.friendlyhedgehog.jetpack.grammar;
 
 import de.friendlyhedgehog.jetpack.util.Check;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
 public sealed interface Operator extends Expression {
 
     record Sequence(Expression first, Expression second) implements Operator {
@@ -54,6 +58,70 @@ public sealed interface Operator extends Expression {
         }
     }
 
+    /**
+     * Commits to the alternative of the innermost enclosing ordered choice: if the alternative fails after the cut,
+     * the remaining alternatives are not tried and the choice fails. Consumes no input. See Mizushima, Maeda and
+     * Yamaguchi, "Packrat Parsers Can Handle Practical Grammars in Mostly Constant Space".
+     */
+    record Cut() implements Operator {
+    }
+
+    /**
+     * Operands joined by prefix, infix and postfix operators, parsed by precedence climbing in one pass instead of
+     * descending through one rule per level of precedence. Every application of an operator becomes a node of the
+     * rule, so this has to be the whole body of a rule.
+     *
+     * @param levels ordered from the loosest to the tightest binding
+     */
+    record Precedence(Expression operand, List<Level> levels) implements Operator {
+
+        public Precedence {
+            Check.requireNotNull("Operand and levels of Precedence can't be null", operand, levels);
+            Check.require(!levels.isEmpty(), "Precedence needs at least one level of operators");
+            levels = List.copyOf(levels);
+        }
+
+        /**
+         * @return the operand followed by the operators of all levels
+         */
+        public List<Expression> expressions() {
+            List<Expression> expressions = new ArrayList<>(List.of(operand));
+            levels.forEach(level -> expressions.addAll(level.operators()));
+            return expressions;
+        }
+
+        /**
+         * @return the same table with the operand and every operator replaced
+         */
+        public Precedence map(UnaryOperator<Expression> mapping) {
+            return new Precedence(
+                    mapping.apply(operand),
+                    levels.stream()
+                            .map(level -> new Level(level.fixity(), level.operators().stream().map(mapping).toList()))
+                            .toList()
+            );
+        }
+
+        /**
+         * {@link #LEFT} and {@link #RIGHT} are infix operators of that associativity.
+         */
+        public enum Fixity {
+            LEFT, RIGHT, PREFIX, POSTFIX
+        }
+
+        /**
+         * Operators of the same precedence, tried in their order.
+         */
+        public record Level(Fixity fixity, List<Expression> operators) {
+
+            public Level {
+                Check.requireNotNull("Fixity and operators of a Level can't be null", fixity, operators);
+                Check.require(!operators.isEmpty(), "A Level needs at least one operator");
+                operators = List.copyOf(operators);
+            }
+        }
+    }
+
     record And(Expression exp) implements Operator {
         public And  {
             Check.requireNotNull("Expression of &-Operator can't be null");
@@ -15,11 +15,19 @@ public sealed interface Symbol extends Expression {
     static Empty empty() {
         return new Empty();
     }
-    record Terminal(String symbol) implements Symbol {
+    /**
+     * @param symbol        regular expression the terminal matches, or the matched text in a parse tree
+     * @param caseSensitive whether letters have to match in case, terminals ignore the case by default
+     */
+    record Terminal(String symbol, boolean caseSensitive) implements Symbol {
 
         public Terminal {
             Check.requireNotNull("Terminal string can't be null", symbol);
         }
+
+        public Terminal(String symbol) {
+            this(symbol, false);
+        }
     }
 
     record NonTerminal(String name) implements Symbol {
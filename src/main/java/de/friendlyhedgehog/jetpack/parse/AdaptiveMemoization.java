@@ -0,0 +1,44 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import java.util.Arrays;
+
+/**
+ * Counts the memo entries stored and reused per rule during one parse, reused failures count like reused matches. A rule with {@link Memoization#ADAPTIVE} stops
+ * being memoized for the rest of the parse, once less than one of {@link #MAX_STORES_PER_HIT} entries was reused.
+ * The decision is made every {@link #SAMPLE} stores, so the counts of a single sample are not yet conclusive.
+ */
+final class AdaptiveMemoization {
+
+    static final int SAMPLE = 64;
+    static final int MAX_STORES_PER_HIT = 8;
+
+    private int[] stores = new int[0];
+    private int[] hits = new int[0];
+    private boolean[] disabled = new boolean[0];
+
+    boolean memoizes(int rule) {
+        return rule >= disabled.length || !disabled[rule];
+    }
+
+    void hit(int rule) {
+        ensureCapacity(rule);
+        ++hits[rule];
+    }
+
+    void stored(int rule) {
+        ensureCapacity(rule);
+        int stored = ++stores[rule];
+        if (stored % SAMPLE == 0 && (long) hits[rule] * MAX_STORES_PER_HIT < stored) {
+            disabled[rule] = true;
+        }
+    }
+
+    private void ensureCapacity(int rule) {
+        if (rule >= stores.length) {
+            int capacity = Math.max(rule + 1, stores.length * 2);
+            stores = Arrays.copyOf(stores, capacity);
+            hits = Arrays.copyOf(hits, capacity);
+            disabled = Arrays.copyOf(disabled, capacity);
+        }
+    }
+}
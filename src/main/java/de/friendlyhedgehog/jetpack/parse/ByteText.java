@@ -0,0 +1,119 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bytes read as text, one character per byte in ISO-8859-1. This halves the memory of an ASCII input compared to a
+ * {@link String} of it. Nothing is copied until a part of the text is turned into a {@link String}.
+ * <p>
+ * Bytes are only read this way if that is how their charset decodes them: always for ISO-8859-1, for US-ASCII and
+ * UTF-8 if all bytes are ASCII. Other UTF-8 input is read as {@link Utf8Text}, which decodes only what is read. Input
+ * in any other charset is decoded into a {@link java.nio.CharBuffer} instead.
+ * <p>
+ * The bytes are kept in a {@link MemorySegment}, either of a heap array, of a buffer or of a memory-mapped file. A
+ * mapping belongs to an automatic {@link Arena}, it is released once no text referencing it is reachable anymore.
+ */
+final class ByteText implements CharSequence {
+
+    private final MemorySegment bytes;
+
+    private ByteText(MemorySegment bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * The bytes between the position and the limit of the buffer. They must not be modified while the text is used.
+     */
+    static CharSequence of(ByteBuffer buffer, Charset charset) {
+        return of(MemorySegment.ofBuffer(buffer), charset);
+    }
+
+    /**
+     * Positions of the parse are ints, so the file can have at most {@link Integer#MAX_VALUE} bytes. A file in
+     * ISO-8859-1, US-ASCII or UTF-8 stays mapped, any other is decoded onto the heap.
+     *
+     * @throws IllegalArgumentException if the file is larger
+     */
+    static CharSequence of(Path path, Charset charset) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("File " + path + " has " + size + " bytes, at most "
+                        + Integer.MAX_VALUE + " can be parsed because positions are ints");
+            }
+            return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, size, Arena.ofAuto()), charset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static CharSequence of(MemorySegment bytes, Charset charset) {
+        boolean utf8 = charset.equals(StandardCharsets.UTF_8);
+        boolean asciiCompatible = charset.equals(StandardCharsets.US_ASCII) || utf8;
+        if (charset.equals(StandardCharsets.ISO_8859_1) || asciiCompatible && isAscii(bytes)) {
+            return new ByteText(bytes);
+        }
+        try {
+            if (utf8) {
+                return Utf8Text.of(bytes);
+            }
+            return charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(bytes.asByteBuffer());
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException("The input is not valid " + charset, e);
+        }
+    }
+
+    /**
+     * Checks eight bytes at a time for a set high bit.
+     */
+    static boolean isAscii(MemorySegment bytes) {
+        long size = bytes.byteSize();
+        long i = 0;
+        for (; i + Long.BYTES <= size; i += Long.BYTES) {
+            if ((bytes.get(ValueLayout.JAVA_LONG_UNALIGNED, i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < size; ++i) {
+            if (bytes.get(ValueLayout.JAVA_BYTE, i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return (int) bytes.byteSize();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(ValueLayout.JAVA_BYTE, index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteText(bytes.asSlice(start, end - start));
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes.toArray(ValueLayout.JAVA_BYTE), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,79 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * Immutable set of characters, exact for US-ASCII. All other characters are represented by a single flag, a set either
+ * contains all of them or none.
+ */
+final class CharSet {
+
+    static final CharSet EMPTY = new CharSet(0, 0, false);
+    static final CharSet ANY = new CharSet(-1L, -1L, true);
+
+    /**
+     * The letters {@code A-Z} and {@code a-z} in the upper half, they are 32 bits apart.
+     */
+    private static final long LETTERS = 0x07FFFFFE_07FFFFFEL;
+
+    private final long low;
+    private final long high;
+    private final boolean nonAscii;
+
+    private CharSet(long low, long high, boolean nonAscii) {
+        this.low = low;
+        this.high = high;
+        this.nonAscii = nonAscii;
+    }
+
+    static CharSet of(char c) {
+        return range(c, c);
+    }
+
+    /**
+     * @return the characters from {@code first} to {@code last}, both inclusive
+     */
+    static CharSet range(char first, char last) {
+        long low = 0;
+        long high = 0;
+        for (char c = first; c <= last && c < 128; ++c) {
+            if (c < 64) {
+                low |= 1L << c;
+            } else {
+                high |= 1L << (c - 64);
+            }
+        }
+        return new CharSet(low, high, last >= 128);
+    }
+
+    CharSet union(CharSet other) {
+        return new CharSet(low | other.low, high | other.high, nonAscii || other.nonAscii);
+    }
+
+    /**
+     * Adds the other case of all US-ASCII letters, like {@link java.util.regex.Pattern#CASE_INSENSITIVE} does.
+     */
+    CharSet ignoringCase() {
+        long letters = high & LETTERS;
+        return new CharSet(low, high | letters << 32 | letters >>> 32, nonAscii);
+    }
+
+    boolean contains(char c) {
+        if (c >= 128) {
+            return nonAscii;
+        }
+        return c < 64 ? (low & 1L << c) != 0 : (high & 1L << (c - 64)) != 0;
+    }
+
+    boolean containsNonAscii() {
+        return nonAscii;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CharSet other && low == other.low && high == other.high && nonAscii == other.nonAscii;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(low) * 31 + Long.hashCode(high) * 7 + Boolean.hashCode(nonAscii);
+    }
+}
@@ -0,0 +1,115 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * All alternatives of a chain of {@link de.friendlyhedgehog.jetpack.grammar.Operator.OrderedChoice}s, tried in order.
+ * <p>
+ * The dispatch table holds, for the next character of the input, the indices of the alternatives that can match at
+ * all. Alternatives which are certain to fail are skipped, the remaining ones keep their order, so the semantics of
+ * the ordered choice are unchanged. Slots {@code 0-127} are the US-ASCII characters, followed by one slot for all
+ * other characters and one for the end of the input.
+ * <p>
+ * When a choice fails at the {@link FarthestFailure farthest failure} so far, the terminals the skipped alternatives
+ * start with are reported as expected, without trying the alternatives.
+ *
+ * @param expected the ids of the terminals every alternative starts with, see {@link FirstSets#firstTerminals}
+ */
+record ChoiceNode(ParserNode[] alternatives, int[][] dispatch, int[][] expected) implements ParserNode {
+
+    private static final int NON_ASCII = 128;
+    private static final int END = 129;
+
+    /**
+     * @return a choice trying all alternatives at every position
+     */
+    static ChoiceNode of(ParserNode[] alternatives) {
+        int[][] dispatch = new int[END + 1][];
+        Arrays.fill(dispatch, IntStream.range(0, alternatives.length).toArray());
+        return new ChoiceNode(alternatives, dispatch, new int[alternatives.length][0]);
+    }
+
+    /**
+     * @param firsts    FIRST set of every alternative
+     * @param nullables nullability of every alternative
+     * @param expected  ids of the terminals every alternative starts with
+     * @return a choice only trying the alternatives which can start with the next character
+     */
+    static ChoiceNode dispatching(ParserNode[] alternatives, List<CharSet> firsts, List<Boolean> nullables,
+                                  int[][] expected) {
+        Map<List<Integer>, int[]> shared = new HashMap<>();
+        int[][] dispatch = new int[END + 1][];
+        for (int slot = 0; slot <= END; ++slot) {
+            final int current = slot;
+            List<Integer> candidates = IntStream.range(0, alternatives.length)
+                    .filter(alternative -> nullables.get(alternative) || canStart(firsts.get(alternative), current))
+                    .boxed()
+                    .toList();
+            dispatch[slot] = shared.computeIfAbsent(
+                    candidates,
+                    _ -> candidates.stream().mapToInt(Integer::intValue).toArray()
+            );
+        }
+        return new ChoiceNode(alternatives, dispatch, expected);
+    }
+
+    private static boolean canStart(CharSet first, int slot) {
+        return switch (slot) {
+            case END -> false;
+            case NON_ASCII -> first.containsNonAscii();
+            default -> first.contains((char) slot);
+        };
+    }
+
+    /**
+     * @return indices of the alternatives to try at the position
+     */
+    int[] candidates(Input input, int position) {
+        if (input.atEnd(position)) {
+            return dispatch[END];
+        }
+        char next = input.charAt(position);
+        return dispatch[next < NON_ASCII ? next : NON_ASCII];
+    }
+
+    /**
+     * Reports the terminals of the alternatives which were skipped at the position, if the choice failed at the
+     * farthest failure while building the tree. Candidates are listed in ascending order, so the skipped
+     * alternatives are those between them.
+     */
+    void reportSkipped(int[] candidates, int position, ParsingState parsingState, TreeBuffer tree) {
+        if (tree == null || candidates.length == alternatives.length || !parsingState.isFarthestFailure(position)) {
+            return;
+        }
+        int next = 0;
+        for (int alternative = 0; alternative < alternatives.length; ++alternative) {
+            if (next < candidates.length && candidates[next] == alternative) {
+                ++next;
+                continue;
+            }
+            for (int terminal : expected[alternative]) {
+                parsingState.fail(terminal, position);
+            }
+        }
+    }
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        boolean outerCut = parsingState.enterChoice();
+        int[] candidates = candidates(input, position);
+        for (int alternative : candidates) {
+            int end = alternatives[alternative].parse(input, position, parsingState, tree);
+            if (end != FAIL || parsingState.isCut()) {
+                parsingState.exitChoice(outerCut);
+                return end;
+            }
+        }
+        reportSkipped(candidates, position, parsingState, tree);
+        parsingState.exitChoice(outerCut);
+        return FAIL;
+    }
+}
@@ -0,0 +1,434 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.datatypes.Either;
+import de.friendlyhedgehog.jetpack.grammar.Expression;
+import de.friendlyhedgehog.jetpack.grammar.Operator;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Executable form of a {@link Grammar}. The rules are translated once into a graph of {@link ParserNode}s, in which
+ * every non-terminal directly references the node of its rule. The compiled grammar holds no state of a parse and
+ * can be reused for any number of inputs.
+ */
+final class CompiledGrammar {
+
+    private final RuleNode startingRule;
+    /**
+     * The layout rule, {@code null} if the input is split into tokens.
+     */
+    private final RuleNode layout;
+    /**
+     * Splits the input into tokens, {@code null} if terminals are matched while parsing.
+     */
+    private final Lexer lexer;
+    /**
+     * Names of the rules, indexed by rule id. Rules dropped by the optimizer have no name.
+     */
+    private final String[] ruleNames;
+    /**
+     * Names of the distinct terminals indexed by {@link TerminalNode#id()}, with a lexer the names of the token
+     * types instead. A terminal merged from a choice of literals has the names of its literals, see
+     * {@link FarthestFailure#names}.
+     */
+    private final List<List<String>> terminalNames;
+
+    private CompiledGrammar(RuleNode startingRule, RuleNode layout, Lexer lexer, String[] ruleNames,
+                            List<List<String>> terminalNames) {
+        this.startingRule = startingRule;
+        this.layout = layout;
+        this.lexer = lexer;
+        this.ruleNames = ruleNames;
+        this.terminalNames = terminalNames;
+    }
+
+    /**
+     * The grammar is optimized with its {@link Grammar#optimization() settings} first, by default ones which keep the
+     * parse trees unchanged. Rules keep the ids they have in the given grammar.
+     */
+    static CompiledGrammar of(Grammar original) {
+        Grammar grammar = GrammarOptimizer.optimize(original, original.optimization()).grammar();
+        Map<String, RuleNode> ruleNodes = new HashMap<>();
+        FirstSets firstSets = FirstSets.of(grammar);
+        Map<String, Integer> components = LeftRecursion.components(grammar, firstSets);
+        grammar.getRules().keySet().forEach(name -> ruleNodes.put(name, new RuleNode(original.ruleId(name), name)));
+        RuleNode layout = grammar.layout().map(ruleNodes::get).orElse(null);
+        Set<String> layoutRules = grammar.layout()
+                .map(name -> GrammarOptimizer.reachable(List.of(name), grammar.getRules()))
+                .orElse(Set.of());
+        Lexer lexer = grammar.tokens().isEmpty() ? null : Lexer.of(grammar);
+        Map<Symbol.Terminal, TerminalNode> terminals = new HashMap<>();
+        Compilation compilation = new Compilation(ruleNodes, terminals, firstSets, layout, lexer);
+        Compilation withoutLayout = new Compilation(ruleNodes, terminals, firstSets, null, lexer);
+        grammar.getRules().forEach((name, expression) -> ruleNodes.get(name).link(
+                lexer != null && lexer.type(name) != null
+                        ? new TokenNode(lexer.type(name), null)
+                        : compileBody(
+                                ruleNodes.get(name),
+                                expression,
+                                layoutRules.contains(name) ? withoutLayout : compilation
+                        ),
+                components.getOrDefault(name, RuleNode.NO_COMPONENT),
+                grammar.memoization(name)
+        ));
+        String[] ruleNames = new String[original.getRules().size()];
+        ruleNodes.values().forEach(rule -> ruleNames[rule.id()] = rule.name());
+        List<List<String>> terminalNames = new ArrayList<>(Collections.nCopies(terminals.size(), List.of()));
+        terminals.forEach((terminal, node) -> terminalNames.set(node.id(), FarthestFailure.names(terminal)));
+        return new CompiledGrammar(ruleNodes.get(grammar.getStartingRule()), layout, lexer, ruleNames,
+                lexer == null ? terminalNames : Arrays.stream(lexer.names()).map(List::of).toList());
+    }
+
+    /**
+     * Compiles without grammar analysis, every choice tries all of its alternatives.
+     */
+    static ParserNode compile(Expression expression, Map<String, RuleNode> rules) {
+        return compile(expression, rules, null);
+    }
+
+    /**
+     * @param firstSets used to build the dispatch tables of choices, {@code null} to try all alternatives
+     */
+    static ParserNode compile(Expression expression, Map<String, RuleNode> rules, FirstSets firstSets) {
+        return compile(expression, new Compilation(rules, new HashMap<>(), firstSets, null, null));
+    }
+
+    private static ParserNode compile(Expression expression, Compilation compilation) {
+        return switch (expression) {
+            case Symbol.Terminal terminal -> compilation.terminal(terminal);
+            case Symbol.NonTerminal(var name) -> compilation.rule(name);
+            case Symbol.Empty() -> new EmptyNode();
+            case Operator.Sequence sequence -> new SequenceNode(
+                    flatten(sequence, Operator.Sequence.class).stream()
+                            .map(element -> compile(element, compilation))
+                            .toArray(ParserNode[]::new)
+            );
+            case Operator.OrderedChoice choice -> compileChoice(
+                    flatten(choice, Operator.OrderedChoice.class),
+                    compilation
+            );
+            case Operator.Star(var exp) -> new StarNode(compile(exp, compilation));
+            case Operator.Plus(var exp) -> new PlusNode(compile(exp, compilation));
+            case Operator.Optional(var exp) -> new OptionalNode(compile(exp, compilation));
+            case Operator.Not(var exp) -> new NotNode(compile(exp, compilation));
+            case Operator.And(var exp) -> new AndNode(compile(exp, compilation));
+            case Operator.Cut() -> new CutNode();
+            case Operator.Group(var exp) -> compile(exp, compilation);
+            case Operator.Precedence _ ->
+                    throw new RuntimeException("Operator precedence can only be the whole body of a rule");
+        };
+    }
+
+    /**
+     * Operator precedence builds nodes of its rule, so it is only compiled as the body of the rule.
+     */
+    private static ParserNode compileBody(RuleNode rule, Expression body, Compilation compilation) {
+        return precedence(body)
+                .map(precedence -> compilePrecedence(rule, precedence, compilation))
+                .orElseGet(() -> compile(body, compilation));
+    }
+
+    /**
+     * @return the operator precedence the body consists of, if any
+     */
+    static Optional<Operator.Precedence> precedence(Expression body) {
+        return switch (body) {
+            case Operator.Group(var exp) -> precedence(exp);
+            case Operator.Precedence precedence -> Optional.of(precedence);
+            default -> Optional.empty();
+        };
+    }
+
+    private static ParserNode compilePrecedence(RuleNode rule, Operator.Precedence precedence,
+                                                Compilation compilation) {
+        List<PrecedenceNode.Operation> prefixes = new ArrayList<>();
+        List<PrecedenceNode.Operation> suffixes = new ArrayList<>();
+        for (int level = 0; level < precedence.levels().size(); ++level) {
+            Operator.Precedence.Level operators = precedence.levels().get(level);
+            for (Expression operator : operators.operators()) {
+                PrecedenceNode.Operation operation = new PrecedenceNode.Operation(
+                        compile(operator, compilation), level, operators.fixity());
+                (operators.fixity() == Operator.Precedence.Fixity.PREFIX ? prefixes : suffixes).add(operation);
+            }
+        }
+        return new PrecedenceNode(
+                rule,
+                compile(precedence.operand(), compilation),
+                prefixes.toArray(PrecedenceNode.Operation[]::new),
+                suffixes.toArray(PrecedenceNode.Operation[]::new)
+        );
+    }
+
+    /**
+     * A choice of literals only becomes a single terminal, which emits the same leaf as the alternative it matched.
+     * With a lexer every literal is a token of its own instead.
+     */
+    private static ParserNode compileChoice(List<Expression> alternatives, Compilation compilation) {
+        Optional<Symbol.Terminal> literals = compilation.lexer() == null
+                ? TerminalMatcher.literalChoice(alternatives)
+                : Optional.empty();
+        if (literals.isPresent()) {
+            return compilation.terminal(literals.get());
+        }
+        ParserNode[] compiled = alternatives.stream()
+                .map(alternative -> compile(alternative, compilation))
+                .toArray(ParserNode[]::new);
+        FirstSets firstSets = compilation.firstSets();
+        if (firstSets == null) {
+            return ChoiceNode.of(compiled);
+        }
+        return ChoiceNode.dispatching(
+                compiled,
+                alternatives.stream().map(firstSets::first).toList(),
+                alternatives.stream().map(firstSets::nullable).toList(),
+                alternatives.stream()
+                        .map(alternative -> firstSets.firstTerminals(alternative).stream()
+                                .mapToInt(compilation::failureId)
+                                .sorted()
+                                .toArray())
+                        .toArray(int[][]::new)
+        );
+    }
+
+    /**
+     * What the expressions of a grammar are compiled with.
+     *
+     * @param terminals the node of every distinct terminal compiled so far, so all occurrences of a terminal share
+     *                  the id of their node
+     * @param firstSets used to build the dispatch tables of choices, {@code null} to try all alternatives. With a
+     *                  lexer, the next character is the first one of the next token, whose type can only be one
+     *                  whose terminal starts with it, so the dispatch stays valid.
+     * @param layout    skipped in front of every terminal, {@code null} for none. The rules used by the layout itself
+     *                  are compiled without, so skipping the layout never calls it again at the same position.
+     * @param lexer     matches the terminals before parsing, {@code null} to match them while parsing
+     */
+    private record Compilation(Map<String, RuleNode> rules, Map<Symbol.Terminal, TerminalNode> terminals,
+                               FirstSets firstSets, RuleNode layout, Lexer lexer) {
+
+        ParserNode terminal(Symbol.Terminal terminal) {
+            if (lexer != null) {
+                return new TokenNode(lexer.type(terminal), null);
+            }
+            TerminalNode node = terminalNode(terminal);
+            return layout == null ? node : new LayoutNode(layout, node);
+        }
+
+        /**
+         * @param symbol a terminal or a token rule, see {@link FirstSets#firstTerminals}
+         * @return the id the symbol reports its failures with, see {@link FarthestFailure}
+         */
+        int failureId(Symbol symbol) {
+            if (symbol instanceof Symbol.Terminal terminal) {
+                return lexer == null ? terminalNode(terminal).id() : lexer.type(terminal);
+            }
+            return lexer.type(((Symbol.NonTerminal) symbol).name());
+        }
+
+        private TerminalNode terminalNode(Symbol.Terminal terminal) {
+            return terminals.computeIfAbsent(
+                    terminal, _ -> new TerminalNode(terminals.size(), TerminalMatcher.of(terminal)));
+        }
+
+        ParserNode rule(String name) {
+            RuleNode rule = Objects.requireNonNull(rules.get(name), () -> "Could not resolve Rule with name " + name);
+            Integer type = lexer == null ? null : lexer.type(name);
+            return type == null ? rule : new TokenNode(type, rule);
+        }
+    }
+
+    /**
+     * A cut commits the innermost choice of its own rule, so it has to be part of an alternative. Predicates don't
+     * pass the choice on to their body. Operator precedence builds nodes of its rule, so it can only be the whole body.
+     *
+     * @return why the body of the rule can't be compiled, empty if it can
+     */
+    static Optional<String> misplacedOperator(String rule, Expression body) {
+        return precedence(body)
+                .map(precedence -> precedence.expressions().stream()
+                        .flatMap(exp -> misplacedOperator(rule, exp, false).stream())
+                        .findFirst())
+                .orElseGet(() -> misplacedOperator(rule, body, false));
+    }
+
+    private static Optional<String> misplacedOperator(String rule, Expression expression, boolean inChoice) {
+        return switch (expression) {
+            case Operator.Cut() -> inChoice
+                    ? Optional.empty()
+                    : Optional.of("Cut outside of an ordered choice in rule " + rule);
+            case Symbol _ -> Optional.empty();
+            case Operator.OrderedChoice(var either, var or) ->
+                    misplacedOperator(rule, either, true).or(() -> misplacedOperator(rule, or, true));
+            case Operator.Sequence(var first, var second) ->
+                    misplacedOperator(rule, first, inChoice).or(() -> misplacedOperator(rule, second, inChoice));
+            case Operator.Star(var exp) -> misplacedOperator(rule, exp, inChoice);
+            case Operator.Plus(var exp) -> misplacedOperator(rule, exp, inChoice);
+            case Operator.Optional(var exp) -> misplacedOperator(rule, exp, inChoice);
+            case Operator.Group(var exp) -> misplacedOperator(rule, exp, inChoice);
+            case Operator.Not(var exp) -> misplacedOperator(rule, exp, false);
+            case Operator.And(var exp) -> misplacedOperator(rule, exp, false);
+            case Operator.Precedence _ ->
+                    Optional.of("Operator precedence can only be the whole body of a rule, in rule " + rule);
+        };
+    }
+
+    /**
+     * Collects the operands of nested binary operators of the same kind. Both operators are associative, so the
+     * nesting, including groups, does not change their meaning. The exception are choices containing a cut, which
+     * are only flattened from the position of the last alternative, where committing to the inner choice is the same
+     * as committing to the outer one.
+     */
+    static List<Expression> flatten(Expression expression, Class<? extends Operator> kind) {
+        List<Expression> operands = new ArrayList<>();
+        Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            Expression current = pending.pop();
+            switch (current) {
+                case Operator.Group(var inner) when kind.isInstance(inner) && !isChoiceWithCut(inner) ->
+                        pending.push(inner);
+                case Operator.Sequence(var first, var second) when kind == Operator.Sequence.class -> {
+                    pending.push(second);
+                    pending.push(first);
+                }
+                case Operator.OrderedChoice(var either, var or) when kind == Operator.OrderedChoice.class -> {
+                    pending.push(or);
+                    pending.push(isChoiceWithCut(either) ? new Operator.Group(either) : either);
+                }
+                default -> operands.add(current);
+            }
+        }
+        return operands;
+    }
+
+    private static boolean isChoiceWithCut(Expression expression) {
+        return expression instanceof Operator.OrderedChoice && containsCut(expression);
+    }
+
+    private static boolean containsCut(Expression expression) {
+        return switch (expression) {
+            case Operator.Cut() -> true;
+            case Symbol _ -> false;
+            case Operator.Sequence(var first, var second) -> containsCut(first) || containsCut(second);
+            case Operator.OrderedChoice(var either, var or) -> containsCut(either) || containsCut(or);
+            case Operator.Star(var exp) -> containsCut(exp);
+            case Operator.Plus(var exp) -> containsCut(exp);
+            case Operator.Optional(var exp) -> containsCut(exp);
+            case Operator.Group(var exp) -> containsCut(exp);
+            case Operator.Not(var exp) -> containsCut(exp);
+            case Operator.And(var exp) -> containsCut(exp);
+            case Operator.Precedence precedence ->
+                    precedence.expressions().stream().anyMatch(CompiledGrammar::containsCut);
+        };
+    }
+
+    /**
+     * @return the input to parse for the text, an error if the text can't be split into tokens
+     */
+    Either<Input, String> input(CharSequence text) {
+        if (lexer != null) {
+            return lexer.lex(text);
+        }
+        return Either.ofThis(layout == null ? Input.of(text, "\\s") : Input.untokenized(text));
+    }
+
+    /**
+     * Matches the starting rule at the beginning of the input.
+     *
+     * @param tree receives the parse tree, {@code null} to only recognize the input
+     * @return the position after the match or {@link ParserNode#FAIL}
+     */
+    int parse(Input input, ParseOptions options, TreeBuffer tree) {
+        return parse(input, options, tree, null);
+    }
+
+    /**
+     * @param failure records the farthest failure while the tree is built, {@code null} to not track failures
+     */
+    int parse(Input input, ParseOptions options, TreeBuffer tree, FarthestFailure failure) {
+        try (ParsingState parsingState = state(options, input)) {
+            parsingState.trackFailures(failure);
+            parsingState.buildTree(tree);
+            int end = switch (options.engine()) {
+                case RECURSIVE -> startingRule.parse(input, 0, parsingState, tree);
+                case ITERATIVE -> IterativeEngine.parse(startingRule, input, 0, parsingState, tree);
+            };
+            if (layout == null || end == ParserNode.FAIL) {
+                return end;
+            }
+            int trailing = switch (options.engine()) {
+                case RECURSIVE -> layout.parse(input, end, parsingState, null);
+                case ITERATIVE -> IterativeEngine.parse(layout, input, end, parsingState, null);
+            };
+            return trailing == ParserNode.FAIL ? end : trailing;
+        }
+    }
+
+    /**
+     * @return the state for one parse of the input
+     */
+    ParsingState state(ParseOptions options, Input input) {
+        return ParsingState.of(options, input, lexer == null ? terminalNames.size() : 0);
+    }
+
+    /**
+     * @return the farthest failure as a message, empty if no terminal failed
+     */
+    String describe(FarthestFailure failure) {
+        return failure.describe(terminalNames);
+    }
+
+    boolean hasLayout() {
+        return layout != null;
+    }
+
+    /**
+     * @return the body of the repetition if the starting rule is one, see {@link StreamParser}
+     */
+    Optional<ParserNode> repeatedElement() {
+        return switch (startingRule.body()) {
+            case StarNode(var body) -> Optional.of(body);
+            case PlusNode(var body) -> Optional.of(body);
+            default -> Optional.empty();
+        };
+    }
+
+    /**
+     * @return whether the starting rule has to match at least once, only meaningful for a repetition
+     */
+    boolean requiresElement() {
+        return startingRule.body() instanceof PlusNode;
+    }
+
+    RuleNode startingRule() {
+        return startingRule;
+    }
+
+    String[] ruleNames() {
+        return ruleNames;
+    }
+
+    static Either<ConsumedExpression, String> evaluate(
+            ParserNode node,
+            Input input,
+            int position,
+            ParsingState parsingState
+    ) {
+        NodeTreeBuffer tree = new NodeTreeBuffer();
+        int end = node.parse(input, position, parsingState, tree);
+        if (end == ParserNode.FAIL) {
+            return Either.or("Could not match " + node + " at position " + position);
+        }
+        return Either.ofThis(new ConsumedExpression(end, List.copyOf(tree.nodes())));
+    }
+}
@@ -0,0 +1,14 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * Commits the innermost enclosing choice to its current alternative, see
+ * {@link de.friendlyhedgehog.jetpack.grammar.Operator.Cut}.
+ */
+record CutNode() implements ParserNode {
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        parsingState.cut(position);
+        return position;
+    }
+}
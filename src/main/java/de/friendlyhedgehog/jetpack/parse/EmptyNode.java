@@ -0,0 +1,9 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+record EmptyNode() implements ParserNode {
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        return position;
+    }
+}
@@ -1,13 +0,0 @@
-package de.friendlyhedgehog.jetpack.parse;
-
-import de.friendlyhedgehog.jetpack.datatypes.Either;
-import de.friendlyhedgehog.jetpack.grammar.Expression;
-
-interface ExpressionEvaluator {
-
-    Either<ConsumedExpression, String> resolveExpression(
-            Expression expression,
-            Input input,
-            int currentPosition
-    );
-}
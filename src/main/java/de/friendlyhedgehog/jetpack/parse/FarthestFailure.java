@@ -0,0 +1,76 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The farthest position at which a terminal failed and the terminals expected there, the usual hint at what is wrong
+ * with an input a PEG does not match. Recording a failure compares two ints and sets a bit, the message is only
+ * rendered when a parse fails.
+ * <p>
+ * Failures are only recorded while the parse tree is built, so the terminals tried by predicates and by the layout
+ * are not reported as expected.
+ */
+final class FarthestFailure {
+
+    private final BitSet expected = new BitSet();
+    private int position = -1;
+
+    /**
+     * @param terminal the id of the terminal, see {@link TerminalNode#id()}, or the type of the token
+     */
+    void fail(int terminal, int position) {
+        if (position < this.position) {
+            return;
+        }
+        if (position > this.position) {
+            this.position = position;
+            expected.clear();
+        }
+        expected.set(terminal);
+    }
+
+    /**
+     * @return the farthest position at which a terminal failed, {@code -1} if none did
+     */
+    int position() {
+        return position;
+    }
+
+    /**
+     * @return the name of a terminal in messages, literals are quoted instead of escaped
+     */
+    static String name(Symbol.Terminal terminal) {
+        return TerminalMatcher.literal(terminal.symbol())
+                .map(literal -> '"' + literal + '"')
+                .orElse(terminal.symbol());
+    }
+
+    /**
+     * @return the names of the literals of a terminal merged from a choice of literals, see
+     * {@link TerminalMatcher#literalChoice}, otherwise only the {@link #name} of the terminal
+     */
+    static List<String> names(Symbol.Terminal terminal) {
+        return TerminalMatcher.literalAlternatives(terminal.symbol())
+                .map(literals -> literals.stream().map(literal -> '"' + literal + '"').toList())
+                .orElseGet(() -> List.of(name(terminal)));
+    }
+
+    /**
+     * @param names the names of the terminals by id, see {@link #names}, they are listed in alphabetical order
+     * @return e.g. {@code expected one of [\+, -] at position 3}, empty if no terminal failed
+     */
+    String describe(List<List<String>> names) {
+        if (position < 0) {
+            return "";
+        }
+        SortedSet<String> terminals = new TreeSet<>();
+        expected.stream().forEach(terminal -> terminals.addAll(names.get(terminal)));
+        String what = terminals.size() == 1 ? terminals.first() : "one of " + terminals;
+        return "expected " + what + " at position " + position;
+    }
+}
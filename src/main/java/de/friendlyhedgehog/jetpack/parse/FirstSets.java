@@ -0,0 +1,277 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.grammar.Expression;
+import de.friendlyhedgehog.jetpack.grammar.Operator;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * FIRST sets and nullability of the expressions of a grammar. The FIRST set holds every character a match of the
+ * expression can start with, an expression is nullable if it can match without consuming anything. Both are
+ * conservative: a character not in the FIRST set of a non-nullable expression means the expression fails, the
+ * opposite does not hold.
+ * <p>
+ * The values of the rules are computed as a fixpoint, starting from empty sets, which also covers left recursive
+ * rules. Terminals are analysed by looking at the first atom of their pattern only, anything not understood is assumed
+ * to start with any character.
+ * <p>
+ * With a layout, see {@link Grammar#withLayout(String)}, a terminal can also start with the FIRST set of the layout.
+ * This is added to all terminals, including those of the layout itself, which is conservative.
+ * <p>
+ * Alongside, the terminals a match can start with are collected for error messages, see {@link #firstTerminals}.
+ */
+final class FirstSets {
+
+    private final Map<String, Expression> rules;
+    private final Map<String, CharSet> ruleFirsts = new HashMap<>();
+    private final Map<String, Boolean> ruleNullables = new HashMap<>();
+    private final Map<String, Set<Symbol>> ruleFirstTerminals = new HashMap<>();
+    private final Map<Symbol.Terminal, CharSet> terminalFirsts = new HashMap<>();
+    private final Set<String> tokens;
+    private CharSet layout = CharSet.EMPTY;
+
+    private FirstSets(Map<String, Expression> rules, Set<String> tokens) {
+        this.rules = rules;
+        this.tokens = tokens;
+    }
+
+    static FirstSets of(Grammar grammar) {
+        FirstSets firstSets = new FirstSets(grammar.getRules(), Set.copyOf(grammar.tokens()));
+        firstSets.rules.keySet().forEach(name -> {
+            firstSets.ruleFirsts.put(name, CharSet.EMPTY);
+            firstSets.ruleNullables.put(name, false);
+            firstSets.ruleFirstTerminals.put(name, Set.of());
+        });
+        firstSets.solve();
+        grammar.layout().ifPresent(layout -> {
+            firstSets.layout = firstSets.ruleFirsts.get(layout);
+            firstSets.solve();
+        });
+        return firstSets;
+    }
+
+    /**
+     * Iterates the values of the rules up to the fixpoint. The sets only grow, so solving again after the layout is
+     * known continues from the previous values.
+     */
+    private void solve() {
+        boolean changed;
+        do {
+            changed = false;
+            for (Map.Entry<String, Expression> rule : rules.entrySet()) {
+                CharSet first = first(rule.getValue());
+                boolean nullable = nullable(rule.getValue());
+                Set<Symbol> firstTerminals = firstTerminals(rule.getValue());
+                if (!first.equals(ruleFirsts.get(rule.getKey()))
+                        || nullable != ruleNullables.get(rule.getKey())
+                        || !firstTerminals.equals(ruleFirstTerminals.get(rule.getKey()))) {
+                    ruleFirsts.put(rule.getKey(), first);
+                    ruleNullables.put(rule.getKey(), nullable);
+                    ruleFirstTerminals.put(rule.getKey(), firstTerminals);
+                    changed = true;
+                }
+            }
+        } while (changed);
+    }
+
+    CharSet first(Expression expression) {
+        return switch (expression) {
+            case Symbol.Terminal terminal -> terminalFirsts.computeIfAbsent(terminal, FirstSets::first).union(layout);
+            case Symbol.NonTerminal(var name) -> ruleFirsts.getOrDefault(name, CharSet.ANY);
+            case Symbol.Empty() -> CharSet.EMPTY;
+            case Operator.Sequence(var first, var second) -> nullable(first)
+                    ? first(first).union(first(second))
+                    : first(first);
+            case Operator.OrderedChoice(var either, var or) -> first(either).union(first(or));
+            case Operator.Star(var exp) -> first(exp);
+            case Operator.Plus(var exp) -> first(exp);
+            case Operator.Optional(var exp) -> first(exp);
+            case Operator.Not _, Operator.And _, Operator.Cut _ -> CharSet.EMPTY;
+            case Operator.Group(var exp) -> first(exp);
+            case Operator.Precedence precedence -> precedence.levels().stream()
+                    .filter(level -> level.fixity() == Operator.Precedence.Fixity.PREFIX)
+                    .flatMap(level -> level.operators().stream())
+                    .map(this::first)
+                    .reduce(first(precedence.operand()), CharSet::union);
+        };
+    }
+
+    /**
+     * The terminals tried at the start of the expression, which all fail if the next character is not in its FIRST
+     * set. With a lexer, token rules are tried as a whole and are included instead of their terminals. Predicates
+     * don't count, their terminals are not reported as expected.
+     */
+    Set<Symbol> firstTerminals(Expression expression) {
+        return switch (expression) {
+            case Symbol.Terminal terminal -> Set.of(terminal);
+            case Symbol.NonTerminal nonTerminal when tokens.contains(nonTerminal.name()) -> Set.of(nonTerminal);
+            case Symbol.NonTerminal(var name) -> ruleFirstTerminals.getOrDefault(name, Set.of());
+            case Symbol.Empty() -> Set.of();
+            case Operator.Sequence(var first, var second) -> nullable(first)
+                    ? union(firstTerminals(first), firstTerminals(second))
+                    : firstTerminals(first);
+            case Operator.OrderedChoice(var either, var or) -> union(firstTerminals(either), firstTerminals(or));
+            case Operator.Star(var exp) -> firstTerminals(exp);
+            case Operator.Plus(var exp) -> firstTerminals(exp);
+            case Operator.Optional(var exp) -> firstTerminals(exp);
+            case Operator.Not _, Operator.And _, Operator.Cut _ -> Set.of();
+            case Operator.Group(var exp) -> firstTerminals(exp);
+            case Operator.Precedence precedence -> precedence.levels().stream()
+                    .filter(level -> level.fixity() == Operator.Precedence.Fixity.PREFIX)
+                    .flatMap(level -> level.operators().stream())
+                    .map(this::firstTerminals)
+                    .reduce(firstTerminals(precedence.operand()), FirstSets::union);
+        };
+    }
+
+    private static Set<Symbol> union(Set<Symbol> first, Set<Symbol> second) {
+        Set<Symbol> union = new HashSet<>(first);
+        union.addAll(second);
+        return union;
+    }
+
+    /**
+     * Terminals never match at the end of the input, a terminal which might match the empty string has all
+     * characters as FIRST set instead.
+     */
+    boolean nullable(Expression expression) {
+        return switch (expression) {
+            case Symbol.Terminal _ -> false;
+            case Symbol.NonTerminal(var name) -> ruleNullables.getOrDefault(name, true);
+            case Symbol.Empty() -> true;
+            case Operator.Sequence(var first, var second) -> nullable(first) && nullable(second);
+            case Operator.OrderedChoice(var either, var or) -> nullable(either) || nullable(or);
+            case Operator.Star _, Operator.Optional _, Operator.Not _, Operator.And _, Operator.Cut _ -> true;
+            case Operator.Plus(var exp) -> nullable(exp);
+            case Operator.Group(var exp) -> nullable(exp);
+            case Operator.Precedence precedence -> nullable(precedence.operand());
+        };
+    }
+
+    static CharSet first(Symbol.Terminal terminal) {
+        CharSet first = switch (TerminalMatcher.of(terminal)) {
+            case TerminalMatcher.Literal(var literal, var _) -> literal.isEmpty()
+                    ? CharSet.ANY
+                    : CharSet.of(literal.charAt(0));
+            case TerminalMatcher.Trie trie -> trie.first();
+            case TerminalMatcher.Dfa dfa -> dfa.first();
+            case TerminalMatcher.Regex(var compiled) -> firstOfPattern(compiled.pattern());
+        };
+        return terminal.caseSensitive() ? first : first.ignoringCase();
+    }
+
+    /**
+     * Understands patterns starting with a character, an escaped character or a character class, which is not
+     * followed by a quantifier allowing zero repetitions.
+     */
+    private static CharSet firstOfPattern(String pattern) {
+        if (pattern.isEmpty() || pattern.indexOf('|') >= 0) {
+            return CharSet.ANY;
+        }
+        int end;
+        CharSet atom;
+        char c = pattern.charAt(0);
+        if (c == '[') {
+            end = pattern.indexOf(']', 1);
+            atom = end < 0 ? null : firstOfClass(pattern.substring(1, end));
+            ++end;
+        } else if (c == '\\') {
+            end = 2;
+            atom = pattern.length() < 2 ? null : firstOfEscape(pattern.charAt(1));
+        } else if ("^$.()?*+{}".indexOf(c) >= 0) {
+            return CharSet.ANY;
+        } else {
+            end = 1;
+            atom = CharSet.of(c);
+        }
+        if (atom == null || end < pattern.length() && "?*{".indexOf(pattern.charAt(end)) >= 0) {
+            return CharSet.ANY;
+        }
+        return atom;
+    }
+
+    /**
+     * @return the characters of a simple class like {@code a-z_\-}, {@code null} for anything else
+     */
+    private static CharSet firstOfClass(String characterClass) {
+        if (characterClass.isEmpty() || characterClass.charAt(0) == '^' || characterClass.contains("[")
+                || characterClass.contains("&&")) {
+            return null;
+        }
+        CharSet result = CharSet.EMPTY;
+        for (int i = 0; i < characterClass.length(); ) {
+            int end = classAtomEnd(characterClass, i);
+            if (end < 0) {
+                return null;
+            }
+            if (end + 1 < characterClass.length() && characterClass.charAt(end) == '-') {
+                int upperEnd = classAtomEnd(characterClass, end + 1);
+                if (upperEnd < 0) {
+                    return null;
+                }
+                int lower = literalOfAtom(characterClass, i);
+                int upper = literalOfAtom(characterClass, end + 1);
+                if (lower < 0 || upper < 0) {
+                    return null;
+                }
+                result = result.union(CharSet.range((char) lower, (char) upper));
+                i = upperEnd;
+            } else {
+                CharSet atom = characterClass.charAt(i) == '\\'
+                        ? firstOfEscape(characterClass.charAt(i + 1))
+                        : CharSet.of(characterClass.charAt(i));
+                if (atom == null) {
+                    return null;
+                }
+                result = result.union(atom);
+                i = end;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the end of the character or escape starting at the index, {@code -1} for a dangling backslash
+     */
+    private static int classAtomEnd(String characterClass, int index) {
+        if (characterClass.charAt(index) != '\\') {
+            return index + 1;
+        }
+        return index + 1 < characterClass.length() ? index + 2 : -1;
+    }
+
+    /**
+     * Ranges are only resolved between single characters, escaped ones included. Their bounds are parsed before the
+     * range, so e.g. {@code \\-z} is the range from the backslash to {@code z}.
+     *
+     * @return the character the atom at the index stands for, {@code -1} for classes like {@code \d} and escapes
+     * like {@code \x41} which are not analyzed
+     */
+    private static int literalOfAtom(String characterClass, int index) {
+        char c = characterClass.charAt(index);
+        if (c != '\\') {
+            return c;
+        }
+        char escaped = characterClass.charAt(index + 1);
+        return Character.isLetterOrDigit(escaped) ? -1 : escaped;
+    }
+
+    /**
+     * @return the characters of {@code \d}, {@code \w} or an escaped non-alphanumeric character, {@code null} for
+     * anything else
+     */
+    private static CharSet firstOfEscape(char escaped) {
+        return switch (escaped) {
+            case 'd' -> CharSet.range('0', '9');
+            case 'w' -> CharSet.range('a', 'z')
+                    .union(CharSet.range('A', 'Z'))
+                    .union(CharSet.range('0', '9'))
+                    .union(CharSet.of('_'));
+            default -> Character.isLetterOrDigit(escaped) ? null : CharSet.of(escaped);
+        };
+    }
+}
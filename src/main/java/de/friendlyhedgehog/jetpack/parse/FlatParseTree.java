@@ -0,0 +1,185 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.datatypes.Node;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parse tree encoded in parallel int arrays instead of a graph of {@link Node}s. Every node has a rule id, its start
+ * and end position in the input and the index of its first child and next sibling. Terminals carry no text, only
+ * the positions of the matched range, their text is taken from the input on demand.
+ * <p>
+ * Positions are the ones of {@link Input}, whitespace between tokens is not counted.
+ */
+public final class FlatParseTree {
+
+    /**
+     * Marks a missing child or sibling.
+     */
+    public static final int NONE = -1;
+    static final int TERMINAL = -1;
+
+    private final Input input;
+    private final String[] ruleNames;
+    private final int[] rules;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final int root;
+
+    FlatParseTree(
+            Input input,
+            String[] ruleNames,
+            int[] rules,
+            int[] starts,
+            int[] ends,
+            int[] firstChildren,
+            int[] nextSiblings,
+            int root
+    ) {
+        this.input = input;
+        this.ruleNames = ruleNames;
+        this.rules = rules;
+        this.starts = starts;
+        this.ends = ends;
+        this.firstChildren = firstChildren;
+        this.nextSiblings = nextSiblings;
+        this.root = root;
+    }
+
+    /**
+     * @return a cursor positioned at the root
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Converts the tree into the {@link Node} representation {@link Grammar#parse} returns. The conversion does not
+     * recurse, so it works for trees of any depth.
+     */
+    public Node<Symbol> toNode() {
+        ArrayDeque<Conversion> open = new ArrayDeque<>();
+        open.push(new Conversion(root));
+        while (true) {
+            Conversion conversion = open.peek();
+            int child = conversion.next;
+            if (child == NONE) {
+                open.pop();
+                Node<Symbol> node = Node.of(
+                        Symbol.nonTerminal(ruleNames[rules[conversion.node]]),
+                        List.copyOf(conversion.children)
+                );
+                if (open.isEmpty()) {
+                    return node;
+                }
+                open.peek().children.add(node);
+            } else {
+                conversion.next = nextSiblings[child];
+                if (rules[child] == TERMINAL) {
+                    conversion.children.add(Node.leaf(new Symbol.Terminal(input.text(starts[child], ends[child]))));
+                } else {
+                    open.push(new Conversion(child));
+                }
+            }
+        }
+    }
+
+    /**
+     * A rule node of {@link #toNode()} whose children are not all converted yet.
+     */
+    private final class Conversion {
+
+        private final int node;
+        private final List<Node<Symbol>> children = new ArrayList<>();
+        private int next;
+
+        private Conversion(int node) {
+            this.node = node;
+            this.next = firstChildren[node];
+        }
+    }
+
+    /**
+     * Walks the tree without allocating. The cursor keeps the path from the root to its current node.
+     */
+    public final class Cursor {
+
+        private int[] path = new int[16];
+        private int depth;
+
+        private Cursor() {
+            path[0] = root;
+        }
+
+        public boolean isTerminal() {
+            return rules[node()] == TERMINAL;
+        }
+
+        /**
+         * @return name of the rule, {@code null} for terminals
+         */
+        public String ruleName() {
+            return isTerminal() ? null : ruleNames[rules[node()]];
+        }
+
+        public int start() {
+            return starts[node()];
+        }
+
+        public int end() {
+            return ends[node()];
+        }
+
+        /**
+         * @return the matched input, without whitespace between tokens
+         */
+        public String text() {
+            return input.text(start(), end());
+        }
+
+        /**
+         * @return distance to the root, which has depth 0
+         */
+        public int depth() {
+            return depth;
+        }
+
+        public boolean gotoFirstChild() {
+            int child = firstChildren[node()];
+            if (child == NONE) {
+                return false;
+            }
+            if (++depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth] = child;
+            return true;
+        }
+
+        public boolean gotoNextSibling() {
+            if (depth == 0 || nextSiblings[node()] == NONE) {
+                return false;
+            }
+            path[depth] = nextSiblings[node()];
+            return true;
+        }
+
+        public boolean gotoParent() {
+            if (depth == 0) {
+                return false;
+            }
+            --depth;
+            return true;
+        }
+
+        private int node() {
+            return path[depth];
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.util.Check;
+
+import java.util.Arrays;
+
+/**
+ * Builds a {@link FlatParseTree}. Handles are the indices of the nodes.
+ * The siblings of a node are only linked once its parent is wrapped. A memoized node may be appended under several
+ * parents while parsing, only the first one links the node itself, all others link a copy of it. The copy shares the
+ * children of the original, whose links never change again.
+ */
+final class FlatTreeBuffer implements TreeBuffer {
+
+    private static final int UNLINKED = -2;
+
+    private int[] rules = new int[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int[] firstChildren = new int[64];
+    private int[] nextSiblings = new int[64];
+    private int count;
+
+    private int[] pending = new int[64];
+    private int pendingSize;
+
+    @Override
+    public int size() {
+        return pendingSize;
+    }
+
+    @Override
+    public void truncate(int size) {
+        pendingSize = size;
+    }
+
+    @Override
+    public void addTerminal(Input input, int start, int end) {
+        add(node(FlatParseTree.TERMINAL, start, end, FlatParseTree.NONE));
+    }
+
+    @Override
+    public void wrap(int from, int to, RuleNode rule, int start, int end) {
+        link(from, to, rule, start, end);
+    }
+
+    @Override
+    public int wrapMemoized(int from, RuleNode rule, int start, int end) {
+        return link(from, pendingSize, rule, start, end);
+    }
+
+    /**
+     * @return the node of the rule
+     */
+    private int link(int from, int to, RuleNode rule, int start, int end) {
+        int firstChild = FlatParseTree.NONE;
+        int previous = FlatParseTree.NONE;
+        for (int i = from; i < to; ++i) {
+            int child = pending[i];
+            if (nextSiblings[child] != UNLINKED) {
+                child = node(rules[child], starts[child], ends[child], firstChildren[child]);
+            }
+            if (previous == FlatParseTree.NONE) {
+                firstChild = child;
+            } else {
+                nextSiblings[previous] = child;
+            }
+            previous = child;
+        }
+        if (previous != FlatParseTree.NONE) {
+            nextSiblings[previous] = FlatParseTree.NONE;
+        }
+        int node = node(rule.id(), start, end, firstChild);
+        int behind = pendingSize - to;
+        if (from + 1 + behind > pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        System.arraycopy(pending, to, pending, from + 1, behind);
+        pending[from] = node;
+        pendingSize = from + 1 + behind;
+        return node;
+    }
+
+    @Override
+    public void add(int handle) {
+        if (pendingSize == pending.length) {
+            pending = Arrays.copyOf(pending, pendingSize * 2);
+        }
+        pending[pendingSize++] = handle;
+    }
+
+    /**
+     * @return the tree below the single result appended at top level
+     */
+    FlatParseTree build(Input input, String[] ruleNames) {
+        Check.require(pendingSize == 1, "Parse tree must have exactly one root");
+        return new FlatParseTree(
+                input,
+                ruleNames,
+                Arrays.copyOf(rules, count),
+                Arrays.copyOf(starts, count),
+                Arrays.copyOf(ends, count),
+                Arrays.copyOf(firstChildren, count),
+                Arrays.copyOf(nextSiblings, count),
+                pending[0]
+        );
+    }
+
+    private int node(int rule, int start, int end, int firstChild) {
+        if (count == rules.length) {
+            int capacity = count * 2;
+            rules = Arrays.copyOf(rules, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        }
+        rules[count] = rule;
+        starts[count] = start;
+        ends[count] = end;
+        firstChildren[count] = firstChild;
+        nextSiblings[count] = UNLINKED;
+        return count++;
+    }
+}
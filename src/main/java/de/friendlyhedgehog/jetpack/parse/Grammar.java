@@ -3,13 +3,23 @@ package de.friendlyhedgehog.jetpack.parse;
 import de.friendlyhedgehog.jetpack.datatypes.Either;
 import de.friendlyhedgehog.jetpack.datatypes.Node;
 import de.friendlyhedgehog.jetpack.grammar.Expression;
+import de.friendlyhedgehog.jetpack.grammar.Operator;
 import de.friendlyhedgehog.jetpack.grammar.Symbol;
 import de.friendlyhedgehog.jetpack.util.Check;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.ToString;
 
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
@@ -20,77 +30,181 @@ public class Grammar {
 
     private final String startingRule;
     private final Map<String, Expression> rules;
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final Map<String, Integer> ruleIds;
+    /**
+     * Rules without entry are always memoized.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Memoization> memoization;
+    /**
+     * Rule skipped before every terminal, {@code null} if the input is split into tokens at whitespace instead.
+     */
+    @Getter(AccessLevel.NONE)
+    private final String layout;
+    /**
+     * Rules lexed as tokens before parsing, in the order of their priority. Empty if terminals are matched while
+     * parsing.
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<String> tokens;
+    /**
+     * What the rules are optimized with when they are compiled, see {@link #withOptimization}.
+     */
+    @Getter(AccessLevel.NONE)
+    private final GrammarOptimizer.Settings optimization;
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private volatile CompiledGrammar compiledGrammar;
 
     /**
      * See  <a href="https://bford.info/pub/lang/peg.pdf">Paper</a> for details
+     * <p>
+     * A rule can consist of operator precedence instead, an operand followed by the levels of operators from the
+     * loosest to the tightest binding, e.g. {@code Expr <- Num %left "\\+" "-" %left "\\*" "/" %prefix "-"}, see
+     * {@link Operator.Precedence}.
      */
-    private static final Map<String, Expression> grammarGrammar = Map.of(
-            "Grammar", plus(nonTerminal("Definition")),
-            "Definition", sequence(nonTerminal("Identifier"), terminalLiteral("<-"), nonTerminal("Expression")),
-            "Expression", sequence(nonTerminal("Sequence"), star(group(sequence(terminalLiteral("/"), nonTerminal("Sequence"))))),
-            "Sequence", star(nonTerminal("Prefix")),
-            "Prefix", sequence(optional(orderedChoice(terminalLiteral("&"), terminalLiteral("!"))), nonTerminal("Suffix")),
-            "Suffix", sequence(nonTerminal("Primary"),
+    private static final Map<String, Expression> grammarGrammar = Map.ofEntries(
+            Map.entry("Grammar", plus(nonTerminal("Definition"))),
+            Map.entry("Definition", sequence(
+                    optional(terminal("@[a-z]+")),
+                    nonTerminal("Identifier"),
+                    terminalLiteral("<-"),
+                    orderedChoice(nonTerminal("Precedence"), nonTerminal("Expression"))
+            )),
+            Map.entry("Precedence", sequence(nonTerminal("Primary"), plus(nonTerminal("Level")))),
+            Map.entry("Level", sequence(terminal("%(left|right|prefix|postfix)"), plus(nonTerminal("Primary")))),
+            Map.entry("Expression", sequence(nonTerminal("Sequence"), star(group(sequence(terminalLiteral("/"), nonTerminal("Sequence")))))),
+            Map.entry("Sequence", star(nonTerminal("Prefix"))),
+            Map.entry("Prefix", sequence(optional(orderedChoice(terminalLiteral("&"), terminalLiteral("!"))), nonTerminal("Suffix"))),
+            Map.entry("Suffix", sequence(nonTerminal("Primary"),
                     optional(orderedChoice(terminalLiteral("?"), terminalLiteral("*"), terminalLiteral("+")))
-            ),
-            "Primary", orderedChoice(
+            )),
+            Map.entry("Primary", orderedChoice(
                     sequence(nonTerminal("Identifier"), Expression.not(terminalLiteral("<-"))),
                     sequence(terminalLiteral("("), nonTerminal("Expression"), terminalLiteral(")")),
                     nonTerminal("Literal"),
                     nonTerminal("Class"),
-                    terminalLiteral(".")
-            ),
-            "Literal", terminal("\"[^\"]+\""),
-            "Class", terminal("\"[^\"]+\""),
-            "Identifier", terminal("[a-zA-Z_]+")
+                    terminalLiteral("."),
+                    terminalLiteral("~")
+            )),
+            Map.entry("Literal", terminal("\"[^\"]+\"")),
+            Map.entry("Class", terminal("\"[^\"]+\"")),
+            Map.entry("Identifier", terminal("[a-zA-Z_]+"))
+    );
+
+    /**
+     * Set the memoization of a rule in the grammar syntax, e.g. {@code @nomemo Num <- [0-9]+}. The annotation
+     * {@link #LAYOUT_ANNOTATION} instead makes the rule the layout of the grammar, see {@link #withLayout(String)}, and
+     * {@link #TOKEN_ANNOTATION} makes it a token rule, see {@link #withTokens(List)}.
+     */
+    private static final Map<String, Memoization> ANNOTATIONS = Map.of(
+            "@memo", Memoization.ALWAYS,
+            "@nomemo", Memoization.NEVER,
+            "@adaptive", Memoization.ADAPTIVE
+    );
+    private static final String LAYOUT_ANNOTATION = "@layout";
+    private static final String TOKEN_ANNOTATION = "@token";
+
+    private static final Grammar parsingGrammar = new Grammar(
+            "Grammar",
+            grammarGrammar
     );
 
     public static Either<Grammar, String> of(String grammarDefinition) {
-        Grammar parsingGrammar = new Grammar(
-                "Grammar",
-                grammarGrammar
-        );
-        Either<ConsumedExpression, String> parsedGrammarDefinition = parsingGrammar.parseString(grammarDefinition);
+        Either<Node<Symbol>, String> parsedGrammarDefinition = parsingGrammar.parse(grammarDefinition);
         return parsedGrammarDefinition.flatMap(Grammar::createGrammar);
     }
 
-    private static Either<Grammar, String> createGrammar(ConsumedExpression consumedExpression) {
-        Node<Symbol> parseTree = consumedExpression.parseTree().getFirst();
+    private static Either<Grammar, String> createGrammar(Node<Symbol> parseTree) {
         Symbol grammar = parseTree.getValue();
         Check.require(grammar.equals(nonTerminal("Grammar")),
                 "Parse tree does not start with grammar definition");
         Map<String, Expression> rules = new HashMap<>();
+        Map<String, Memoization> memoization = new HashMap<>();
         String firstRule = null;
+        String layout = null;
+        List<String> tokens = new ArrayList<>();
         for (Node<Symbol> definition : parseTree.getChildren()) {
             Check.require(
                     definition.getValue().equals(Symbol.nonTerminal("Definition")),
                     "Wrong nonterminal"
             );
+            List<Node<Symbol>> parts = definition.getChildren();
+            Memoization ruleMemoization = null;
+            boolean isLayout = false;
+            boolean isToken = false;
+            if (parts.getFirst().getValue() instanceof Symbol.Terminal(var annotation, var _)) {
+                ruleMemoization = ANNOTATIONS.get(annotation);
+                isLayout = annotation.equals(LAYOUT_ANNOTATION);
+                isToken = annotation.equals(TOKEN_ANNOTATION);
+                if (ruleMemoization == null && !isLayout && !isToken) {
+                    return Either.or("Unknown annotation " + annotation + ", expected " + LAYOUT_ANNOTATION + ", "
+                            + TOKEN_ANNOTATION + " or one of " + ANNOTATIONS.keySet());
+                }
+                parts = parts.subList(1, parts.size());
+            }
 
-            String ruleName = getTerminalChild(definition.getChildren().getFirst());
+            String ruleName = getTerminalChild(parts.getFirst());
+            if (isLayout) {
+                if (layout != null) {
+                    return Either.or("Only one rule can be the layout, found " + layout + " and " + ruleName);
+                }
+                layout = ruleName;
+            }
+            if (isToken) {
+                tokens.add(ruleName);
+            }
             if (firstRule == null) {
                 firstRule = ruleName;
             }
             rules.put(
                     ruleName,
-                    parseExpression(definition.getChildren().get(2))
+                    parseExpression(parts.get(2))
             );
+            if (ruleMemoization != null) {
+                memoization.put(ruleName, ruleMemoization);
+            }
+        }
+        Optional<String> misplaced = misplacedOperator(rules);
+        if (misplaced.isPresent()) {
+            return Either.or(misplaced.get());
         }
         return Either.ofThis(
                 new Grammar(
                         firstRule,
-                        rules
+                        rules,
+                        memoization,
+                        layout,
+                        tokens,
+                        GrammarOptimizer.Settings.defaults()
                 )
         );
     }
 
     private static Expression parseExpression(Node<Symbol> expressionRule) {
-        if (expressionRule.getValue() instanceof Symbol.NonTerminal) {
-            return parseExpressionRule(expressionRule.getChildren());
+        if (expressionRule.getValue() instanceof Symbol.NonTerminal(var name)) {
+            return name.equals("Precedence")
+                    ? parsePrecedence(expressionRule.getChildren())
+                    : parseExpressionRule(expressionRule.getChildren());
         }
         throw new RuntimeException("https://xkcd.com/2200/");
     }
 
+    private static Expression parsePrecedence(List<Node<Symbol>> children) {
+        List<Operator.Precedence.Level> levels = new ArrayList<>();
+        for (Node<Symbol> level : children.subList(1, children.size())) {
+            List<Node<Symbol>> parts = level.getChildren();
+            String fixity = getTerminal(parts.getFirst()).substring(1).toUpperCase(Locale.ROOT);
+            levels.add(new Operator.Precedence.Level(
+                    Operator.Precedence.Fixity.valueOf(fixity),
+                    parts.subList(1, parts.size()).stream().map(part -> parsePrimary(part.getChildren())).toList()
+            ));
+        }
+        return new Operator.Precedence(parsePrimary(children.getFirst().getChildren()), levels);
+    }
+
     private static Expression parseExpressionRule(List<Node<Symbol>> children) {
         Node<Symbol> sequence = children.getFirst();
         Expression firstExpression = parseSequence(sequence.getChildren());
@@ -137,7 +251,7 @@ public class Grammar {
     }
 
     private static String getTerminal(Node<Symbol> node) {
-        if (node.getValue() instanceof Symbol.Terminal(var s)) {
+        if (node.getValue() instanceof Symbol.Terminal(var s, var _)) {
             return s;
         } else throw new RuntimeException("Unexpected Nonterminal: " + node.getValue());
     }
@@ -155,9 +269,11 @@ public class Grammar {
             } else {
                 throw new RuntimeException("Unrecognized Child " + name);
             }
-        } else if (first instanceof Symbol.Terminal(var firstTerminal)) {
+        } else if (first instanceof Symbol.Terminal(var firstTerminal, var _)) {
             if (firstTerminal.equals(".")) {
                 return Expression.empty();
+            } else if (firstTerminal.equals("~")) {
+                return Expression.cut();
             } else if (firstTerminal.equals("(")) {
                 return Expression.group(parseExpressionRule(children.get(1).getChildren()));
             } else {
@@ -171,15 +287,48 @@ public class Grammar {
 
     private static String getTerminalChild(Node<Symbol> identifierRule) {
         Symbol value = identifierRule.getChildren().getFirst().getValue();
-        if (value instanceof Symbol.Terminal(var name)) {
+        if (value instanceof Symbol.Terminal(var name, var _)) {
             return name;
         }
         throw new RuntimeException("Unexpected Nonterminal in Grammar Definition");
     }
 
     public Grammar(String startingRule, Map<String, Expression> rules) {
+        this(startingRule, rules, Map.of());
+    }
+
+    /**
+     * @param memoization the memoization of rules, which are not always memoized
+     * @throws IllegalArgumentException if a rule has a cut outside of an ordered choice or operator precedence that
+     *                                  is not its whole body
+     */
+    public Grammar(String startingRule, Map<String, Expression> rules, Map<String, Memoization> memoization) {
+        this(startingRule, rules, memoization, null, List.of(), GrammarOptimizer.Settings.defaults());
+    }
+
+    private Grammar(
+            String startingRule,
+            Map<String, Expression> rules,
+            Map<String, Memoization> memoization,
+            String layout,
+            List<String> tokens,
+            GrammarOptimizer.Settings optimization
+    ) {
         Check.requireNotNull("The parameters to Grammar can't be null.",
-                startingRule, rules);
+                startingRule, rules, memoization, tokens, optimization);
+        Check.require(
+                layout == null || rules.containsKey(layout),
+                "The layout has to be a rule of the grammar: " + layout
+        );
+        Check.require(
+                rules.keySet().containsAll(tokens),
+                "Token rules have to be rules of the grammar: " + tokens
+        );
+        Check.require(layout == null || tokens.isEmpty(), "A grammar can't have both a layout and token rules");
+        Check.require(
+                rules.keySet().containsAll(memoization.keySet()),
+                "Memoization can only be set for rules of the grammar: " + memoization.keySet()
+        );
         Check.require(
                 Check.hasKey(rules, startingRule),
                 MessageFormat.format(
@@ -188,46 +337,306 @@ public class Grammar {
                         String.join(", ", rules.keySet())
                 )
         );
+        misplacedOperator(rules).ifPresent(error -> {
+            throw new IllegalArgumentException(error);
+        });
         this.startingRule = startingRule;
         this.rules = rules;
+        this.ruleIds = assignRuleIds(startingRule, rules);
+        this.memoization = Map.copyOf(memoization);
+        this.layout = layout;
+        this.tokens = List.copyOf(tokens);
+        this.optimization = optimization;
     }
 
-    public Either<Node<Symbol>, String> parse(String s) {
-        return parseString(s).map(consumedExpression ->
-                consumedExpression.parseTree().getFirst());
+    /**
+     * @return the first rule with a cut outside of a choice or with operator precedence that is not its whole body,
+     * see {@link CompiledGrammar#misplacedOperator}
+     */
+    private static Optional<String> misplacedOperator(Map<String, Expression> rules) {
+        return rules.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .flatMap(rule -> CompiledGrammar.misplacedOperator(rule.getKey(), rule.getValue()).stream())
+                .findFirst();
     }
 
-    public boolean fitsGrammar(String s) {
-        return parseString(s) instanceof Either.This<ConsumedExpression, String>;
+    public Memoization memoization(String ruleName) {
+        return memoization.getOrDefault(ruleName, Memoization.ALWAYS);
     }
 
-    private Either<ConsumedExpression, String> parseString(String s) {
-        Input input = Input.of(s, "\\s");
-        Either<ConsumedExpression, String> consume = Evaluate.evaluate(
-                input,
-                startingRule,
-                nonTerminal -> Objects.requireNonNull(
-                        rules.get(nonTerminal.name()),
-                        () -> "Could not resolve Rule with name " + nonTerminal.name()
-                )
-        );
+    /**
+     * @return whether the memoization of the rule was set, instead of the rule being memoized by default
+     */
+    boolean hasMemoization(String ruleName) {
+        return memoization.containsKey(ruleName);
+    }
 
-        if (consume instanceof Either.This<ConsumedExpression, String>(var consumedExpression)) {
-            if (consumedExpression.parsePosition() == input.length()) {
-                return consume;
-            }
-            String errorMessage = "Could only match " + consumedExpression.parsePosition() +
-                    " of " + input.length() + " characters";
-            String left = input.left(consumedExpression.parsePosition());
-            String right = input.right(consumedExpression.parsePosition());
-            System.out.println(errorMessage);
-            System.out.println("Parsed"  + left);
-            System.out.println("Unparsed" + right);
-            return Either.or(
-                    errorMessage
-            );
-        } else {
-            return consume;
+    /**
+     * @return a copy of this grammar, in which the rule is memoized as given
+     */
+    public Grammar withMemoization(String ruleName, Memoization ruleMemoization) {
+        Check.requireNotNull("Memoization can't be null", ruleMemoization);
+        Map<String, Memoization> changed = new HashMap<>(memoization);
+        changed.put(ruleName, ruleMemoization);
+        return withRules(rules, changed);
+    }
+
+    /**
+     * @return the rule skipped before every terminal, empty if the input is split into tokens at whitespace
+     */
+    public Optional<String> layout() {
+        return Optional.ofNullable(layout);
+    }
+
+    /**
+     * Returns a copy of this grammar, which skips the layout rule, e.g. whitespace and comments, in front of every
+     * terminal and at the end of the input. Positions are then offsets in the original text and terminals can
+     * contain whitespace. The layout rule is only recognized, it doesn't appear in parse trees, and its own terminals
+     * are matched without skipping. The span of a rule in the tree starts where the rule was applied, so it includes
+     * the layout in front of its first terminal.
+     * <p>
+     * Without a layout, the input is split into tokens at whitespace and positions leave out the whitespace.
+     */
+    public Grammar withLayout(String layoutRule) {
+        Check.requireNotNull("Layout rule can't be null", layoutRule);
+        return new Grammar(startingRule, rules, memoization, layoutRule, tokens, optimization);
+    }
+
+    /**
+     * @return the token rules, in the order of their priority, empty if terminals are matched while parsing
+     */
+    public List<String> tokens() {
+        return tokens;
+    }
+
+    /**
+     * Returns a copy of this grammar, which splits the input into tokens before parsing. Each token rule has to be a
+     * terminal or a choice of literals, each terminal of the other rules becomes a token of its own. At every
+     * position the longest token is taken, ties go to the terminals of the other rules first, then to the token rules
+     * in the given order. See {@link Lexer}.
+     * <p>
+     * The parser then matches tokens by their type and positions are token indices, which shrinks the memo table and
+     * matches each token only once. The parse trees are the same as without tokens, as long as the lexer splits the
+     * input the way the parser would.
+     */
+    public Grammar withTokens(List<String> tokenRules) {
+        Check.requireNotNull("Token rules can't be null", tokenRules);
+        return new Grammar(startingRule, rules, memoization, layout, tokenRules, optimization);
+    }
+
+    /**
+     * @return the settings the rules are optimized with when they are compiled
+     */
+    public GrammarOptimizer.Settings optimization() {
+        return optimization;
+    }
+
+    /**
+     * Returns a copy of this grammar, whose rules are optimized with the given settings when they are compiled, e.g.
+     * {@link GrammarOptimizer.Settings#disabled()} to parse with the rules exactly as written while debugging a
+     * grammar. Grammars are optimized with the {@link GrammarOptimizer.Settings#defaults() default settings} otherwise.
+     */
+    public Grammar withOptimization(GrammarOptimizer.Settings settings) {
+        Check.requireNotNull("Optimization settings can't be null", settings);
+        return new Grammar(startingRule, rules, memoization, layout, tokens, settings);
+    }
+
+    /**
+     * @return a copy of this grammar with the same starting rule, layout, tokens and optimization, but other rules
+     */
+    Grammar withRules(Map<String, Expression> changedRules, Map<String, Memoization> changedMemoization) {
+        return new Grammar(startingRule, changedRules, changedMemoization, layout, tokens, optimization);
+    }
+
+    /**
+     * Rules are numbered densely from zero, starting with the starting rule followed by the remaining rules in
+     * alphabetical order.
+     */
+    public int ruleId(String ruleName) {
+        Integer id = ruleIds.get(ruleName);
+        if (id == null) {
+            throw new RuntimeException("Could not resolve Rule with name " + ruleName);
+        }
+        return id;
+    }
+
+    private static Map<String, Integer> assignRuleIds(String startingRule, Map<String, Expression> rules) {
+        List<String> ruleNames = new ArrayList<>(rules.keySet());
+        ruleNames.remove(startingRule);
+        Collections.sort(ruleNames);
+        ruleNames.addFirst(startingRule);
+        Map<String, Integer> ids = new HashMap<>();
+        for (int id = 0; id < ruleNames.size(); ++id) {
+            ids.put(ruleNames.get(id), id);
+        }
+        return Map.copyOf(ids);
+    }
+
+    /**
+     * The input is not copied, so it must not be modified while parsing.
+     */
+    public Either<Node<Symbol>, String> parse(CharSequence s) {
+        return parse(s, ParseOptions.defaults());
+    }
+
+    public Either<Node<Symbol>, String> parse(CharSequence s, ParseOptions options) {
+        NodeTreeBuffer tree = new NodeTreeBuffer();
+        return compile().input(s)
+                .flatMap(input -> parseInput(input, options, tree))
+                .map(_ -> tree.nodes().getFirst());
+    }
+
+    /**
+     * Parses bytes in UTF-8 without decoding them into a {@link String}. In input that is all ASCII every byte is one
+     * character, see {@link ByteText}, other input is decoded character by character while it is read, see
+     * {@link Utf8Text}. The bytes between position and limit of the buffer are parsed, they must not be modified while
+     * parsing.
+     */
+    public Either<Node<Symbol>, String> parse(ByteBuffer bytes) {
+        return parse(bytes, ParseOptions.defaults());
+    }
+
+    public Either<Node<Symbol>, String> parse(ByteBuffer bytes, ParseOptions options) {
+        return parse(bytes, StandardCharsets.UTF_8, options);
+    }
+
+    /**
+     * Bytes in ISO-8859-1, US-ASCII or UTF-8 are parsed without decoding them as a whole. Input in other charsets is
+     * decoded first.
+     */
+    public Either<Node<Symbol>, String> parse(ByteBuffer bytes, Charset charset, ParseOptions options) {
+        return parse(ByteText.of(bytes, charset), options);
+    }
+
+    /**
+     * Parses a file in UTF-8 of up to 2 GiB, positions are ints, so the file can have at most
+     * {@link Integer#MAX_VALUE} bytes. The file is parsed without reading it onto the heap: it is memory-mapped and
+     * terminals are matched directly against its bytes like in {@link #parse(ByteBuffer)}, only the text of the
+     * terminals in the tree is copied. For a file with non-ASCII characters an index of about 3% of its size is kept
+     * on the heap, to find the bytes of a position.
+     *
+     * @throws IllegalArgumentException if the file is larger than 2 GiB
+     */
+    public Either<Node<Symbol>, String> parse(Path path) {
+        return parse(path, ParseOptions.defaults());
+    }
+
+    public Either<Node<Symbol>, String> parse(Path path, ParseOptions options) {
+        return parse(path, StandardCharsets.UTF_8, options);
+    }
+
+    /**
+     * Like {@link #parse(ByteBuffer, Charset, ParseOptions)} for a memory-mapped file of up to 2 GiB, see
+     * {@link #parse(Path)}. Files in ISO-8859-1, US-ASCII or UTF-8 stay mapped while parsing, files in other charsets
+     * are decoded onto the heap.
+     */
+    public Either<Node<Symbol>, String> parse(Path path, Charset charset, ParseOptions options) {
+        return parse(ByteText.of(path, charset), options);
+    }
+
+    /**
+     * Like {@link #parse(CharSequence)}, but returns the tree in its compact array encoding.
+     */
+    public Either<FlatParseTree, String> parseFlat(CharSequence s) {
+        return parseFlat(s, ParseOptions.defaults());
+    }
+
+    public Either<FlatParseTree, String> parseFlat(CharSequence s, ParseOptions options) {
+        FlatTreeBuffer tree = new FlatTreeBuffer();
+        return compile().input(s).flatMap(input -> parseInput(input, options, tree)
+                .map(_ -> tree.build(input, compile().ruleNames())));
+    }
+
+    /**
+     * Like {@link #parse(ByteBuffer)}, but returns the tree in its compact array encoding. The text of a terminal is
+     * only decoded when it is read, so the buffer must not be modified while the tree is used.
+     */
+    public Either<FlatParseTree, String> parseFlat(ByteBuffer bytes) {
+        return parseFlat(bytes, ParseOptions.defaults());
+    }
+
+    public Either<FlatParseTree, String> parseFlat(ByteBuffer bytes, ParseOptions options) {
+        return parseFlat(bytes, StandardCharsets.UTF_8, options);
+    }
+
+    public Either<FlatParseTree, String> parseFlat(ByteBuffer bytes, Charset charset, ParseOptions options) {
+        return parseFlat(ByteText.of(bytes, charset), options);
+    }
+
+    /**
+     * Like {@link #parse(Path)}, but returns the tree in its compact array encoding, for files of up to 2 GiB. The file
+     * stays mapped while the tree is reachable, the text of a terminal is only read from the file when it is needed.
+     */
+    public Either<FlatParseTree, String> parseFlat(Path path) {
+        return parseFlat(path, ParseOptions.defaults());
+    }
+
+    public Either<FlatParseTree, String> parseFlat(Path path, ParseOptions options) {
+        return parseFlat(path, StandardCharsets.UTF_8, options);
+    }
+
+    public Either<FlatParseTree, String> parseFlat(Path path, Charset charset, ParseOptions options) {
+        return parseFlat(ByteText.of(path, charset), options);
+    }
+
+    /**
+     * Parses a grammar whose starting rule is a repetition, like {@code Grammar <- Definition+}, without reading all
+     * of the input into memory. The trees of the top-level elements are passed to the consumer as soon as each
+     * element is complete, while the rest of the input is still being read. The reader is not closed. Grammars with a
+     * layout can't be streamed.
+     *
+     * @return the number of trees passed to the consumer
+     */
+    public Either<Integer, String> parseStream(Reader reader, Consumer<Node<Symbol>> consumer) {
+        return parseStream(reader, ParseOptions.defaults(), consumer);
+    }
+
+    public Either<Integer, String> parseStream(Reader reader, ParseOptions options, Consumer<Node<Symbol>> consumer) {
+        return StreamParser.parse(compile(), startingRule, reader, options, consumer);
+    }
+
+    /**
+     * Like {@link #parseStream(Reader, Consumer)} for UTF-8 encoded input.
+     */
+    public Either<Integer, String> parseStream(ReadableByteChannel channel, Consumer<Node<Symbol>> consumer) {
+        return parseStream(Channels.newReader(channel, StandardCharsets.UTF_8), consumer);
+    }
+
+    public boolean fitsGrammar(CharSequence s) {
+        return fitsGrammar(s, ParseOptions.defaults());
+    }
+
+    public boolean fitsGrammar(CharSequence s, ParseOptions options) {
+        return compile().input(s) instanceof Either.This<Input, String>(var input)
+                && compile().parse(input, options, null) == input.length();
+    }
+
+    /**
+     * The rules are optimized with the {@link #optimization() settings} of this grammar and compiled on first use, the
+     * result is shared by all following parses, see {@link GrammarOptimizer}.
+     */
+    private CompiledGrammar compile() {
+        CompiledGrammar compiled = compiledGrammar;
+        if (compiled == null) {
+            compiled = CompiledGrammar.of(this);
+            compiledGrammar = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * @return the end of the input if all of it was matched
+     */
+    private Either<Integer, String> parseInput(Input input, ParseOptions options, TreeBuffer tree) {
+        FarthestFailure failure = new FarthestFailure();
+        int end = compile().parse(input, options, tree, failure);
+        if (end == input.length()) {
+            return Either.ofThis(end);
         }
+        String errorMessage = end == ParserNode.FAIL
+                ? "Could not match rule " + startingRule
+                : "Could only match " + end + " of " + input.length() + " " + input.unit();
+        String expected = compile().describe(failure);
+        return Either.or(expected.isEmpty() ? errorMessage : errorMessage + ", " + expected);
     }
 }
\ No newline at end of file
@@ -0,0 +1,400 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.grammar.Expression;
+import de.friendlyhedgehog.jetpack.grammar.Operator;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+import de.friendlyhedgehog.jetpack.util.Check;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Rewrites the rules of a grammar before it is compiled. The passes run in this order:
+ * <ol>
+ *     <li>Rules that can't be reached from the starting rule are dropped. Not with a lexer, which splits the input
+ *     with the terminals of all rules.</li>
+ *     <li>Wrappers without effect are folded: groups, optional empty expressions and empty sequence parts.</li>
+ *     <li>Consecutive literal alternatives of a choice are merged into one terminal. Not with a lexer, which matches
+ *     the longest of all terminals instead of the first alternative.</li>
+ *     <li>Small rules that are not part of any recursion are inlined, except for operator precedence, which builds
+ *     nodes of its own rule. With a lexer, rules that are not called by any other rule keep their expressions.</li>
+ * </ol>
+ * The optimized grammar accepts the same inputs as the original one. Unless rules are inlined with
+ * {@link Inlining#REMOVE_NODES}, it also produces the same parse trees.
+ * <p>
+ * Every grammar is optimized with its {@link Grammar#optimization() settings} when it is compiled, by default with
+ * {@link Settings#defaults()}, see {@link Grammar#withOptimization}. Calling {@link #optimize} is only needed to see
+ * the changes. The optimized grammar is not optimized again when it is compiled.
+ */
+public final class GrammarOptimizer {
+
+    /**
+     * Rules with at most this many expression nodes are inlined.
+     */
+    static final int INLINE_LIMIT = 8;
+
+    private final Settings settings;
+    private final List<String> changes = new ArrayList<>();
+
+    private GrammarOptimizer(Settings settings) {
+        this.settings = settings;
+    }
+
+    public enum Inlining {
+        /**
+         * Rules are applied as written.
+         */
+        NONE,
+        /**
+         * Small rules are applied without memo table, their nodes stay in the parse tree.
+         */
+        KEEP_NODES,
+        /**
+         * Small rules are replaced by their expressions, their nodes disappear from the parse tree.
+         */
+        REMOVE_NODES
+    }
+
+    /**
+     * Toggles the single passes, e.g. to compare parse trees while debugging a grammar.
+     */
+    public record Settings(boolean dropUnreachableRules, boolean foldWrappers, boolean mergeLiterals,
+                           Inlining inlining) {
+
+        public Settings {
+            Check.requireNotNull("Inlining can't be null", inlining);
+        }
+
+        public static Settings defaults() {
+            return new Settings(true, true, true, Inlining.KEEP_NODES);
+        }
+
+        public static Settings disabled() {
+            return new Settings(false, false, false, Inlining.NONE);
+        }
+    }
+
+    /**
+     * @param grammar the optimized grammar
+     * @param changes human-readable description of every change, in the order they were made
+     */
+    public record Result(Grammar grammar, List<String> changes) {
+    }
+
+    public static Result optimize(Grammar grammar) {
+        return optimize(grammar, Settings.defaults());
+    }
+
+    public static Result optimize(Grammar grammar, Settings settings) {
+        Check.requireNotNull("The parameters to optimize can't be null.", grammar, settings);
+        return new GrammarOptimizer(settings).run(grammar);
+    }
+
+    private Result run(Grammar grammar) {
+        String start = grammar.getStartingRule();
+        Set<String> roots = new HashSet<>(List.of(start));
+        grammar.layout().ifPresent(roots::add);
+        roots.addAll(grammar.tokens());
+        Map<String, Expression> rules = new TreeMap<>(grammar.getRules());
+        Map<String, Memoization> memoization = new HashMap<>();
+        rules.keySet().stream()
+                .filter(grammar::hasMemoization)
+                .forEach(rule -> memoization.put(rule, grammar.memoization(rule)));
+        boolean lexed = !grammar.tokens().isEmpty();
+        if (settings.dropUnreachableRules() && !lexed) {
+            dropUnreachable(roots, rules);
+        }
+        if (settings.foldWrappers()) {
+            rewriteRules(rules, "Folded wrappers in rule ", this::fold);
+        }
+        if (settings.mergeLiterals() && !lexed) {
+            rewriteRules(rules, "Merged literals in rule ", this::mergeLiterals);
+        }
+        if (settings.inlining() != Inlining.NONE) {
+            inline(roots, rules, memoization, lexed);
+        }
+        memoization.keySet().retainAll(rules.keySet());
+        Grammar optimized = grammar.withRules(Map.copyOf(rules), memoization).withOptimization(Settings.disabled());
+        return new Result(optimized, List.copyOf(changes));
+    }
+
+    /**
+     * @param roots the starting rule, the layout and the token rules
+     */
+    private void dropUnreachable(Set<String> roots, Map<String, Expression> rules) {
+        Set<String> reachable = reachable(roots, rules);
+        rules.keySet().removeIf(rule -> {
+            boolean unreachable = !reachable.contains(rule);
+            if (unreachable) {
+                changes.add("Dropped unreachable rule " + rule);
+            }
+            return unreachable;
+        });
+    }
+
+    private void rewriteRules(Map<String, Expression> rules, String change, UnaryOperator<Expression> rewrite) {
+        for (Map.Entry<String, Expression> rule : rules.entrySet()) {
+            Expression rewritten = rewrite.apply(rule.getValue());
+            if (!rewritten.equals(rule.getValue())) {
+                rule.setValue(rewritten);
+                changes.add(change + rule.getKey());
+            }
+        }
+    }
+
+    private Expression fold(Expression expression) {
+        return switch (expression) {
+            case Symbol symbol -> symbol;
+            case Operator.Group(var exp) -> fold(exp);
+            case Operator.Optional(var exp) -> {
+                Expression inner = fold(exp);
+                yield switch (inner) {
+                    case Symbol.Empty empty -> empty;
+                    case Operator.Optional optional -> optional;
+                    case Operator.Star star -> star;
+                    default -> new Operator.Optional(inner);
+                };
+            }
+            case Operator.Sequence(var first, var second) -> {
+                Expression left = fold(first);
+                Expression right = fold(second);
+                if (left instanceof Symbol.Empty) {
+                    yield right;
+                }
+                yield right instanceof Symbol.Empty ? left : new Operator.Sequence(left, right);
+            }
+            case Operator.OrderedChoice(var either, var or) -> new Operator.OrderedChoice(fold(either), fold(or));
+            // a group keeps nested stars apart, a** is rejected
+            case Operator.Star(var exp) -> {
+                Expression inner = fold(exp);
+                yield new Operator.Star(inner instanceof Operator.Star ? new Operator.Group(inner) : inner);
+            }
+            case Operator.Plus(var exp) -> new Operator.Plus(fold(exp));
+            case Operator.Not(var exp) -> new Operator.Not(fold(exp));
+            case Operator.And(var exp) -> new Operator.And(fold(exp));
+            case Operator.Cut cut -> cut;
+            case Operator.Precedence precedence -> precedence.map(this::fold);
+        };
+    }
+
+    /**
+     * Terminals can't span over whitespace separated tokens, so only alternatives are merged, not literals following
+     * each other in a sequence.
+     */
+    private Expression mergeLiterals(Expression expression) {
+        return switch (expression) {
+            case Symbol symbol -> symbol;
+            case Operator.OrderedChoice choice -> {
+                List<Expression> merged = new ArrayList<>();
+                List<Symbol.Terminal> literals = new ArrayList<>();
+                for (Expression alternative : CompiledGrammar.flatten(choice, Operator.OrderedChoice.class)) {
+                    if (!(alternative instanceof Symbol.Terminal terminal) || !isMergeable(terminal)) {
+                        addLiterals(merged, literals);
+                        merged.add(mergeLiterals(alternative));
+                    } else {
+                        if (!literals.isEmpty() && literals.getFirst().caseSensitive() != terminal.caseSensitive()) {
+                            addLiterals(merged, literals);
+                        }
+                        literals.add(terminal);
+                    }
+                }
+                addLiterals(merged, literals);
+                yield Expression.orderedChoice(merged);
+            }
+            case Operator.Sequence(var first, var second) ->
+                    new Operator.Sequence(mergeLiterals(first), mergeLiterals(second));
+            case Operator.Star(var exp) -> new Operator.Star(mergeLiterals(exp));
+            case Operator.Plus(var exp) -> new Operator.Plus(mergeLiterals(exp));
+            case Operator.Optional(var exp) -> new Operator.Optional(mergeLiterals(exp));
+            case Operator.Group(var exp) -> new Operator.Group(mergeLiterals(exp));
+            case Operator.Not(var exp) -> new Operator.Not(mergeLiterals(exp));
+            case Operator.And(var exp) -> new Operator.And(mergeLiterals(exp));
+            case Operator.Cut cut -> cut;
+            case Operator.Precedence precedence -> precedence.map(this::mergeLiterals);
+        };
+    }
+
+    private static boolean isMergeable(Symbol.Terminal terminal) {
+        return TerminalMatcher.literalChoice(List.of(terminal)).isPresent();
+    }
+
+    private static void addLiterals(List<Expression> alternatives, List<Symbol.Terminal> literals) {
+        if (literals.size() == 1) {
+            alternatives.add(literals.getFirst());
+        } else if (!literals.isEmpty()) {
+            alternatives.add(TerminalMatcher.literalChoice(literals).orElseThrow());
+        }
+        literals.clear();
+    }
+
+    /**
+     * Only rules without a memoization of their own are switched to {@link Memoization#NEVER}, rules whose
+     * memoization was set, e.g. with {@code @memo}, keep it.
+     *
+     * @param memoization the memoization set for rules, rules without entry are memoized by default
+     * @param lexed       whether the grammar has a lexer, whose token types are the terminals of all rules, so rules
+     *                    are only replaced where they are called
+     */
+    private void inline(Set<String> roots, Map<String, Expression> rules, Map<String, Memoization> memoization,
+                        boolean lexed) {
+        Set<String> recursive = recursiveRules(rules);
+        Set<String> inlined = new LinkedHashSet<>();
+        for (Map.Entry<String, Expression> rule : rules.entrySet()) {
+            String name = rule.getKey();
+            if (!roots.contains(name) && !recursive.contains(name) && size(rule.getValue()) <= INLINE_LIMIT
+                    && CompiledGrammar.precedence(rule.getValue()).isEmpty()) {
+                inlined.add(name);
+            }
+        }
+        if (settings.inlining() == Inlining.KEEP_NODES) {
+            for (String name : inlined) {
+                if (!memoization.containsKey(name)) {
+                    memoization.put(name, Memoization.NEVER);
+                    changes.add("Applying rule " + name + " without memoization");
+                }
+            }
+            return;
+        }
+        if (lexed) {
+            Set<String> called = new HashSet<>();
+            rules.values().forEach(expression -> called.addAll(calls(expression)));
+            inlined.retainAll(called);
+        }
+        Map<String, Expression> expanded = new HashMap<>();
+        for (String name : inlined) {
+            expanded.put(name, expand(rules.get(name), rules, inlined, expanded));
+        }
+        rules.keySet().removeAll(inlined);
+        for (Map.Entry<String, Expression> rule : rules.entrySet()) {
+            rule.setValue(expand(rule.getValue(), rules, inlined, expanded));
+        }
+        inlined.forEach(name -> changes.add("Inlined rule " + name));
+    }
+
+    /**
+     * Replaces calls of inlined rules by their expressions. Inlined rules are not recursive, so this terminates.
+     */
+    private static Expression expand(Expression expression, Map<String, Expression> rules, Set<String> inlined,
+                                     Map<String, Expression> expanded) {
+        UnaryOperator<Expression> recurse = exp -> expand(exp, rules, inlined, expanded);
+        return switch (expression) {
+            case Symbol.NonTerminal(var name) when inlined.contains(name) -> {
+                Expression body = expanded.get(name);
+                if (body == null) {
+                    body = recurse.apply(rules.get(name));
+                    expanded.put(name, body);
+                }
+                yield new Operator.Group(body);
+            }
+            case Symbol symbol -> symbol;
+            case Operator.Sequence(var first, var second) ->
+                    new Operator.Sequence(recurse.apply(first), recurse.apply(second));
+            case Operator.OrderedChoice(var either, var or) ->
+                    new Operator.OrderedChoice(recurse.apply(either), recurse.apply(or));
+            case Operator.Star(var exp) -> new Operator.Star(recurse.apply(exp));
+            case Operator.Plus(var exp) -> new Operator.Plus(recurse.apply(exp));
+            case Operator.Optional(var exp) -> new Operator.Optional(recurse.apply(exp));
+            case Operator.Group(var exp) -> new Operator.Group(recurse.apply(exp));
+            case Operator.Not(var exp) -> new Operator.Not(recurse.apply(exp));
+            case Operator.And(var exp) -> new Operator.And(recurse.apply(exp));
+            case Operator.Cut cut -> cut;
+            case Operator.Precedence precedence -> precedence.map(recurse);
+        };
+    }
+
+    /**
+     * @return the rules called from the roots, directly or through other rules, including the roots
+     */
+    static Set<String> reachable(Collection<String> roots, Map<String, Expression> rules) {
+        Set<String> reachable = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            String rule = pending.pop();
+            if (reachable.add(rule)) {
+                pending.addAll(calls(rules.get(rule)));
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * @return the rules that can call themselves, directly or through other rules
+     */
+    private static Set<String> recursiveRules(Map<String, Expression> rules) {
+        Set<String> recursive = new HashSet<>();
+        for (String rule : rules.keySet()) {
+            Set<String> visited = new HashSet<>();
+            Deque<String> pending = new ArrayDeque<>(calls(rules.get(rule)));
+            while (!pending.isEmpty()) {
+                String callee = pending.pop();
+                if (callee.equals(rule)) {
+                    recursive.add(rule);
+                    break;
+                }
+                if (visited.add(callee) && rules.containsKey(callee)) {
+                    pending.addAll(calls(rules.get(callee)));
+                }
+            }
+        }
+        return recursive;
+    }
+
+    private static Set<String> calls(Expression expression) {
+        Set<String> calls = new HashSet<>();
+        Deque<Expression> pending = new ArrayDeque<>();
+        if (expression != null) {
+            pending.push(expression);
+        }
+        while (!pending.isEmpty()) {
+            switch (pending.pop()) {
+                case Symbol.NonTerminal(var name) -> calls.add(name);
+                case Symbol _ -> {
+                }
+                case Operator.Sequence(var first, var second) -> {
+                    pending.push(first);
+                    pending.push(second);
+                }
+                case Operator.OrderedChoice(var either, var or) -> {
+                    pending.push(either);
+                    pending.push(or);
+                }
+                case Operator.Star(var exp) -> pending.push(exp);
+                case Operator.Plus(var exp) -> pending.push(exp);
+                case Operator.Optional(var exp) -> pending.push(exp);
+                case Operator.Group(var exp) -> pending.push(exp);
+                case Operator.Not(var exp) -> pending.push(exp);
+                case Operator.And(var exp) -> pending.push(exp);
+                case Operator.Cut _ -> {
+                }
+                case Operator.Precedence precedence -> precedence.expressions().forEach(pending::push);
+            }
+        }
+        return calls;
+    }
+
+    private static int size(Expression expression) {
+        return switch (expression) {
+            case Symbol _, Operator.Cut _ -> 1;
+            case Operator.Sequence(var first, var second) -> 1 + size(first) + size(second);
+            case Operator.OrderedChoice(var either, var or) -> 1 + size(either) + size(or);
+            case Operator.Star(var exp) -> 1 + size(exp);
+            case Operator.Plus(var exp) -> 1 + size(exp);
+            case Operator.Optional(var exp) -> 1 + size(exp);
+            case Operator.Group(var exp) -> 1 + size(exp);
+            case Operator.Not(var exp) -> 1 + size(exp);
+            case Operator.And(var exp) -> 1 + size(exp);
+            case Operator.Precedence precedence ->
+                    1 + precedence.expressions().stream().mapToInt(GrammarOptimizer::size).sum();
+        };
+    }
+}
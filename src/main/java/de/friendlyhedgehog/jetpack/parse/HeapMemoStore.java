@@ -0,0 +1,42 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.datatypes.PackedMemoTable;
+
+final class HeapMemoStore implements MemoStore {
+
+    private final PackedMemoTable table = PackedMemoTable.of();
+
+    @Override
+    public int get(int ruleId, int position) {
+        return table.get(ruleId, position);
+    }
+
+    @Override
+    public int getParseTree(int ruleId, int position) {
+        return table.getPayload(ruleId, position);
+    }
+
+    @Override
+    public void insert(int ruleId, int position, int entry) {
+        table.insert(ruleId, position, entry);
+    }
+
+    @Override
+    public void insert(int ruleId, int position, int entry, int parseTree) {
+        table.insert(ruleId, position, entry, parseTree);
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public void removeBefore(int position) {
+        table.removeBefore(position);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -1,75 +1,245 @@
 package de.friendlyhedgehog.jetpack.parse;
 
-import de.friendlyhedgehog.jetpack.util.Check;
-
 import java.text.MessageFormat;
-import java.util.*;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * The text to parse, split into tokens by whitespace. Positions are counted without the whitespace, so the first
+ * character of a token directly follows the last character of the previous token.
+ * The text is not copied, the tokens are kept as two int arrays pointing into it.
+ * <p>
+ * Grammars with a layout rule skip whitespace themselves, their input is a single token spanning the whole text.
+ */
 public class Input {
 
-    private final NavigableMap<Integer, String> tokens;
+    private final CharSequence text;
+    private final int[] tokenPositions;
+    private final int[] tokenOffsets;
+    private final int tokenCount;
+    private final int length;
+    /**
+     * Index of the last token that was looked up. Parsing mostly stays within a token, so this spares the binary
+     * search in most cases.
+     */
+    private int lastToken;
+    /**
+     * Whether the parse has checked for the end of the input, see {@link #atEnd(int)}.
+     */
+    private boolean endReached;
+
+    Input(CharSequence text, int[] tokenPositions, int[] tokenOffsets, int tokenCount, int length) {
+        this.text = text;
+        this.tokenPositions = tokenPositions;
+        this.tokenOffsets = tokenOffsets;
+        this.tokenCount = tokenCount;
+        this.length = length;
+    }
+
+    /**
+     * @param whitespaceRegex separates the tokens, the default {@code \s} is scanned for without a regex
+     */
+    public static Input of(CharSequence input, String whitespaceRegex) {
+        if (whitespaceRegex.equals("\\s")) {
+            return of(input);
+        }
+        Matcher separator = Pattern.compile(whitespaceRegex).matcher(input);
+        Tokens tokens = new Tokens(input);
+        int tokenStart = 0;
+        while (separator.find()) {
+            tokens.add(tokenStart, separator.start());
+            tokenStart = separator.end();
+        }
+        tokens.add(tokenStart, input.length());
+        return new Input(input, tokens.positions, tokens.offsets, tokens.count, tokens.length);
+    }
 
-    private Input(Map<Integer, String> tokens) {
-        this.tokens = Collections.unmodifiableNavigableMap(new TreeMap<>(tokens));
+    /**
+     * @return the input as one token, positions are offsets in the text
+     */
+    static Input untokenized(CharSequence input) {
+        int tokenCount = input.isEmpty() ? 0 : 1;
+        return new Input(input, new int[]{0}, new int[]{0}, tokenCount, input.length());
     }
 
-    public static Input of(String input, String whitespaceRegex) {
-        String[] splitInput = input.split(whitespaceRegex);
-        TreeMap<Integer, String> tokens = new TreeMap<>();
-        int runningLength = 0;
-        for (String token : splitInput) {
-            String trimmedToken = token.trim();
-            if (!trimmedToken.isEmpty()) {
-                tokens.put(runningLength, trimmedToken);
-                runningLength += trimmedToken.length();
+    private static Input of(CharSequence input) {
+        Tokens tokens = new Tokens(input);
+        int tokenStart = 0;
+        for (int i = 0, length = input.length(); i < length; ++i) {
+            if (isWhitespace(input.charAt(i))) {
+                tokens.add(tokenStart, i);
+                tokenStart = i + 1;
             }
         }
-        return new Input(tokens);
+        tokens.add(tokenStart, input.length());
+        return new Input(input, tokens.positions, tokens.offsets, tokens.count, tokens.length);
+    }
+
+    /**
+     * @return whether the character is matched by {@code \s}
+     */
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
     }
 
     public int length() {
-        int result;
-        if (tokens.isEmpty()) {
-            result = 0;
-        } else {
-            Map.Entry<Integer, String> lastTokenAndIndex = tokens.lastEntry();
-            result = lastTokenAndIndex.getKey() + lastTokenAndIndex.getValue().length();
+        return length;
+    }
+
+    /**
+     * Nodes check for the end of the input with this method, so a parse of a prefix of a stream can tell whether its
+     * outcome depends on where the prefix ends.
+     *
+     * @return whether the position is at the end of the input
+     */
+    boolean atEnd(int position) {
+        if (position < length) {
+            return false;
         }
-        return result;
+        endReached = true;
+        return true;
+    }
+
+    /**
+     * @return what positions count, for messages
+     */
+    String unit() {
+        return "characters";
+    }
+
+    /**
+     * @return whether {@link #atEnd(int)} was true for any position so far
+     */
+    boolean endReached() {
+        return endReached;
     }
 
     public String getRemainingToken(int index) {
-        Map.Entry<Integer, String> tokenAndStartingPosition = tokens.floorEntry(index);
-        int startOfToken = tokenAndStartingPosition.getKey();
-        String token = tokenAndStartingPosition.getValue();
-        int offsetInToken = index - startOfToken;
-        Check.require(
-                offsetInToken < token.length(),
-                MessageFormat.format(
-                        "Out of bounds index {0} for token {1} starting at {2} with length {3}" +
-                                " -> Offset {4} too large",
-                        index, token, startOfToken, token.length(), offsetInToken
-                )
-        );
-        return token.substring(offsetInToken);
-    }
-
-    // TODO Test
+        int token = tokenAt(index);
+        int offsetInToken = index - tokenPositions[token];
+        if (offsetInToken >= tokenLength(token)) {
+            throw new RuntimeException(MessageFormat.format(
+                    "Out of bounds index {0} for token {1} starting at {2} with length {3}" +
+                            " -> Offset {4} too large",
+                    index, token, tokenPositions[token], tokenLength(token), offsetInToken
+            ));
+        }
+        return text.subSequence(offset(token, index), tokenOffsets[token] + tokenLength(token)).toString();
+    }
+
+    /**
+     * Matches the terminal against the token at the given position. Terminals can't span over multiple tokens.
+     *
+     * @return the end position of the match or {@link TerminalMatcher#NO_MATCH}
+     */
+    int match(TerminalMatcher matcher, int position) {
+        int token = tokenAt(position);
+        int offset = offset(token, position);
+        int end = matcher.match(text, offset, tokenOffsets[token] + tokenLength(token));
+        return end == TerminalMatcher.NO_MATCH ? end : position + (end - offset);
+    }
+
+    /**
+     * @return the character at a position before {@link #length()}
+     */
+    char charAt(int position) {
+        return text.charAt(offset(tokenAt(position), position));
+    }
+
+    /**
+     * @return the text between two positions, whitespace between tokens is left out
+     */
+    String text(int from, int to) {
+        int token = tokenAt(from);
+        int offset = offset(token, from);
+        if (to <= tokenPositions[token] + tokenLength(token)) {
+            return text.subSequence(offset, offset + (to - from)).toString();
+        }
+        StringBuilder builder = new StringBuilder(to - from);
+        for (int position = from; position < to; ) {
+            token = tokenAt(position);
+            int length = Math.min(to, tokenPositions[token] + tokenLength(token)) - position;
+            offset = offset(token, position);
+            builder.append(text, offset, offset + length);
+            position += length;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the input before the position, including whitespace
+     */
     public String left(int position) {
-        SortedMap<Integer, String> headMap = tokens.headMap(position);
-        String startOfToken = getStartOfToken(position);
-        return headMap.values().stream().reduce(" ", String::concat) + (startOfToken.isEmpty() ? "" : " " + startOfToken);
+        return text.subSequence(0, sourceOffset(position)).toString();
     }
 
-    // TODO Test
+    /**
+     * @return the input after the position, including whitespace
+     */
     public String right(int position) {
-        SortedMap<Integer, String> headMap = tokens.tailMap(position);
-        String remainingToken = getRemainingToken(position);
-        return  (remainingToken.isEmpty() ? "" : " " + remainingToken) + headMap.values().stream().reduce(" ", String::concat);
+        return text.subSequence(sourceOffset(position), text.length()).toString();
+    }
+
+    /**
+     * @return the offset in the text of the character at the position, including whitespace
+     */
+    int sourceOffset(int position) {
+        if (position >= length) {
+            return tokenCount == 0 ? text.length() : tokenOffsets[tokenCount - 1] + tokenLength(tokenCount - 1);
+        }
+        return offset(tokenAt(position), position);
+    }
+
+    private int offset(int token, int position) {
+        return tokenOffsets[token] + (position - tokenPositions[token]);
+    }
+
+    private int tokenLength(int token) {
+        return (token + 1 < tokenCount ? tokenPositions[token + 1] : length) - tokenPositions[token];
+    }
+
+    private int tokenAt(int position) {
+        int token = lastToken;
+        if (tokenPositions[token] <= position && (token + 1 == tokenCount || position < tokenPositions[token + 1])) {
+            return token;
+        }
+        int found = Arrays.binarySearch(tokenPositions, 0, tokenCount, position);
+        token = found >= 0 ? found : -found - 2;
+        lastToken = token;
+        return token;
     }
 
-    private String getStartOfToken(int position) {
-        Map.Entry<Integer, String> entry = Objects.requireNonNull(tokens.floorEntry(position));
-        return entry.getValue().substring(0, position - entry.getKey());
+    private static final class Tokens {
+
+        private final CharSequence text;
+        private int[] positions = new int[16];
+        private int[] offsets = new int[16];
+        private int count;
+        private int length;
+
+        private Tokens(CharSequence text) {
+            this.text = text;
+        }
+
+        private void add(int from, int to) {
+            while (from < to && text.charAt(from) <= ' ') {
+                ++from;
+            }
+            while (to > from && text.charAt(to - 1) <= ' ') {
+                --to;
+            }
+            if (from == to) {
+                return;
+            }
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            positions[count] = length;
+            offsets[count] = from;
+            ++count;
+            length += to - from;
+        }
     }
-}
\ No newline at end of file
+}
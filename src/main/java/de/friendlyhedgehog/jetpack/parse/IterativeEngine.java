@@ -0,0 +1,302 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import java.util.Arrays;
+
+import static de.friendlyhedgehog.jetpack.parse.ParserNode.FAIL;
+
+/**
+ * Evaluates a graph of {@link ParserNode}s without recursing on the Java stack. Every node being evaluated has a frame
+ * on an explicit stack, which is kept in parallel arrays on the heap. A frame runs through phases: the first one
+ * enters the node, every further one takes the result of a child. Rules use the same steps as {@link RuleNode#parse},
+ * so both engines memoize and grow left recursions identically.
+ */
+final class IterativeEngine {
+
+    private static final int ENTER = 0;
+
+    private static final int RULE_GROW_RECURSIVE = 1;
+    private static final int RULE_SEED = 2;
+    private static final int RULE_GROW_LR = 3;
+    private static final int RULE_UNMEMOIZED = 4;
+
+    private final Input input;
+    private final ParsingState parsingState;
+    private final TreeBuffer tree;
+
+    private ParserNode[] nodes = new ParserNode[64];
+    private int[] positions = new int[64];
+    private int[] phases = new int[64];
+    private int[] marks = new int[64];
+    private int[] values = new int[64];
+    private boolean[] recognizing = new boolean[64];
+    private ParsingState.Growing[] growings = new ParsingState.Growing[64];
+    private PrecedenceNode.Climb[] climbs = new PrecedenceNode.Climb[64];
+    private int size;
+    /**
+     * Result of the frame popped last.
+     */
+    private int result;
+
+    private IterativeEngine(Input input, ParsingState parsingState, TreeBuffer tree) {
+        this.input = input;
+        this.parsingState = parsingState;
+        this.tree = tree;
+    }
+
+    static int parse(ParserNode node, Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        IterativeEngine engine = new IterativeEngine(input, parsingState, tree);
+        engine.push(node, position, tree == null);
+        engine.run();
+        return engine.result;
+    }
+
+    private void run() {
+        while (size > 0) {
+            int top = size - 1;
+            TreeBuffer tree = recognizing[top] ? null : this.tree;
+            switch (nodes[top]) {
+                case TerminalNode terminal -> pop(terminal.parse(input, positions[top], parsingState, tree));
+                case TokenNode token -> pop(token.parse(input, positions[top], parsingState, tree));
+                case LayoutNode(var layout, var terminal) -> {
+                    if (phases[top] == ENTER) {
+                        recognize(top, layout);
+                    } else if (phases[top] == 1) {
+                        call(top, 2, terminal, result == FAIL ? positions[top] : result);
+                    } else {
+                        pop(result);
+                    }
+                }
+                case EmptyNode _ -> pop(positions[top]);
+                case RuleNode rule -> rule(top, rule, tree);
+                case SequenceNode sequence -> sequence(top, sequence, tree);
+                case ChoiceNode choice -> choice(top, choice, tree);
+                case StarNode(var body) -> repeat(top, body);
+                case PlusNode(var body) -> {
+                    if (phases[top] == ENTER) {
+                        call(top, 1, body, positions[top]);
+                    } else if (phases[top] == 1 && result == FAIL) {
+                        pop(FAIL);
+                    } else {
+                        repeat(top, body);
+                    }
+                }
+                case OptionalNode(var body) -> {
+                    if (phases[top] == ENTER) {
+                        parsingState.enterBacktrackPoint();
+                        call(top, 1, body, positions[top]);
+                    } else {
+                        parsingState.exitBacktrackPoint();
+                        pop(result == FAIL ? positions[top] : result);
+                    }
+                }
+                case NotNode(var body) -> {
+                    if (phases[top] == ENTER) {
+                        parsingState.enterBacktrackPoint();
+                        recognize(top, body);
+                    } else {
+                        parsingState.exitBacktrackPoint();
+                        pop(result == FAIL ? positions[top] : FAIL);
+                    }
+                }
+                case AndNode(var body) -> {
+                    if (phases[top] == ENTER) {
+                        parsingState.enterBacktrackPoint();
+                        recognize(top, body);
+                    } else {
+                        parsingState.exitBacktrackPoint();
+                        pop(result == FAIL ? FAIL : positions[top]);
+                    }
+                }
+                case CutNode cut -> pop(cut.parse(input, positions[top], parsingState, tree));
+                case PrecedenceNode precedence -> precedence(top, precedence, tree);
+            }
+        }
+    }
+
+    private void rule(int top, RuleNode rule, TreeBuffer tree) {
+        int position = positions[top];
+        switch (phases[top]) {
+            case ENTER -> {
+                if (!rule.memoizes(parsingState)) {
+                    marks[top] = RuleNode.mark(tree);
+                    call(top, RULE_UNMEMOIZED, rule.body(), position);
+                    return;
+                }
+                ParsingState.Growing growing = parsingState.getGrowing();
+                if (rule.growsRecursive(growing, position)) {
+                    growing.involve(rule);
+                    marks[top] = RuleNode.mark(tree);
+                    call(top, RULE_GROW_RECURSIVE, rule.body(), position);
+                    return;
+                }
+                growings[top] = growing;
+                parsingState.setGrowing(null);
+                rule.enterApplication(parsingState);
+                int entered = rule.enter(parsingState, position, tree);
+                if (entered != RuleNode.EVALUATE) {
+                    popRule(top, entered);
+                    return;
+                }
+                marks[top] = RuleNode.mark(tree);
+                call(top, RULE_SEED, rule.body(), position);
+            }
+            case RULE_UNMEMOIZED -> pop(rule.exitUnmemoized(position, result, tree, marks[top]));
+            case RULE_GROW_RECURSIVE -> pop(rule.exitGrowRecursive(parsingState, position, result, tree, marks[top]));
+            case RULE_SEED -> {
+                int seed = rule.exitSeed(parsingState, position, result, tree, marks[top]);
+                if (seed != RuleNode.GROW) {
+                    popRule(top, seed);
+                    return;
+                }
+                values[top] = FAIL;
+                growLr(top, rule, tree);
+            }
+            default -> {
+                int grown = rule.exitGrowLr(parsingState, position, result, tree, marks[top], values[top]);
+                if (grown == FAIL) {
+                    popRule(top, rule.finishGrowLr(parsingState, position, tree, values[top]));
+                    return;
+                }
+                values[top] = grown;
+                growLr(top, rule, tree);
+            }
+        }
+    }
+
+    private void growLr(int top, RuleNode rule, TreeBuffer tree) {
+        rule.enterGrowLr(parsingState, positions[top]);
+        marks[top] = RuleNode.mark(tree);
+        call(top, RULE_GROW_LR, rule.body(), positions[top]);
+    }
+
+    /**
+     * Pops the frame of a rule which was not part of growing a left recursion, restoring the growing of its caller.
+     */
+    private void popRule(int top, int value) {
+        ((RuleNode) nodes[top]).exitApplication(parsingState);
+        parsingState.setGrowing(growings[top]);
+        growings[top] = null;
+        pop(value);
+    }
+
+    /**
+     * The index of the current element is kept in the values of the frame.
+     */
+    private void sequence(int top, SequenceNode sequence, TreeBuffer tree) {
+        ParserNode[] elements = sequence.elements();
+        if (phases[top] == ENTER) {
+            marks[top] = RuleNode.mark(tree);
+            values[top] = 0;
+            call(top, 1, elements[0], positions[top]);
+        } else if (result == FAIL) {
+            if (tree != null) {
+                tree.truncate(marks[top]);
+            }
+            pop(FAIL);
+        } else if (++values[top] == elements.length) {
+            pop(result);
+        } else {
+            call(top, 1, elements[values[top]], result);
+        }
+    }
+
+    /**
+     * The index into the candidates of the choice is kept in the values of the frame, whether the enclosing choice has
+     * passed a cut in the marks.
+     */
+    private void choice(int top, ChoiceNode choice, TreeBuffer tree) {
+        int[] candidates = choice.candidates(input, positions[top]);
+        if (phases[top] == ENTER) {
+            marks[top] = parsingState.enterChoice() ? 1 : 0;
+            values[top] = 0;
+        } else if (result != FAIL || parsingState.isCut()) {
+            parsingState.exitChoice(marks[top] == 1);
+            pop(result);
+            return;
+        } else {
+            ++values[top];
+        }
+        if (values[top] == candidates.length) {
+            choice.reportSkipped(candidates, positions[top], parsingState, tree);
+            parsingState.exitChoice(marks[top] == 1);
+            pop(FAIL);
+        } else {
+            call(top, 1, choice.alternatives()[candidates[values[top]]], positions[top]);
+        }
+    }
+
+    /**
+     * Shared by star and plus, applies the body until it fails. The last position is kept in the values of the frame.
+     */
+    private void repeat(int top, ParserNode body) {
+        if (phases[top] == ENTER || phases[top] == 1) {
+            values[top] = phases[top] == ENTER ? positions[top] : result;
+        } else {
+            parsingState.exitBacktrackPoint();
+            if (result == FAIL) {
+                pop(values[top]);
+                return;
+            }
+            values[top] = result;
+            parsingState.commit(result);
+        }
+        parsingState.enterBacktrackPoint();
+        call(top, 2, body, values[top]);
+    }
+
+    /**
+     * Runs the steps of {@link PrecedenceNode.Climb}, which is kept with the frame.
+     */
+    private void precedence(int top, PrecedenceNode precedence, TreeBuffer tree) {
+        ParserNode next;
+        if (phases[top] == ENTER) {
+            parsingState.enterBacktrackPoint();
+            climbs[top] = new PrecedenceNode.Climb(precedence, positions[top], tree);
+            next = climbs[top].start();
+        } else {
+            next = climbs[top].next(result);
+        }
+        if (next != null) {
+            call(top, 1, next, climbs[top].position());
+            return;
+        }
+        parsingState.exitBacktrackPoint();
+        int end = climbs[top].result();
+        climbs[top] = null;
+        pop(end);
+    }
+
+    private void call(int top, int phase, ParserNode node, int position) {
+        phases[top] = phase;
+        push(node, position, recognizing[top]);
+    }
+
+    private void recognize(int top, ParserNode node) {
+        phases[top] = 1;
+        push(node, positions[top], true);
+    }
+
+    private void push(ParserNode node, int position, boolean recognize) {
+        if (size == nodes.length) {
+            int capacity = size * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            phases = Arrays.copyOf(phases, capacity);
+            marks = Arrays.copyOf(marks, capacity);
+            values = Arrays.copyOf(values, capacity);
+            recognizing = Arrays.copyOf(recognizing, capacity);
+            growings = Arrays.copyOf(growings, capacity);
+            climbs = Arrays.copyOf(climbs, capacity);
+        }
+        nodes[size] = node;
+        positions[size] = position;
+        phases[size] = ENTER;
+        recognizing[size] = recognize;
+        ++size;
+    }
+
+    private void pop(int value) {
+        nodes[--size] = null;
+        result = value;
+    }
+}
@@ -0,0 +1,22 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * A terminal of a grammar with layout, see {@link Grammar#withLayout(String)}. The layout rule is skipped in front of
+ * the terminal. It is only recognized, so it leaves no trace in the parse tree, and its end is memoized like that of
+ * any other rule.
+ */
+record LayoutNode(RuleNode layout, ParserNode terminal) implements ParserNode {
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        return terminal.parse(input, skip(layout, input, position, parsingState), parsingState, tree);
+    }
+
+    /**
+     * @return the position after the layout, the given position if there is none
+     */
+    static int skip(RuleNode layout, Input input, int position, ParsingState parsingState) {
+        int end = layout.parse(input, position, parsingState, null);
+        return end == FAIL ? position : end;
+    }
+}
@@ -0,0 +1,109 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.grammar.Expression;
+import de.friendlyhedgehog.jetpack.grammar.Operator;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the left recursive rules of a grammar. A rule calls another rule on the left, if it can apply it without
+ * consuming any input before. The left recursive rules are the ones in a cycle of these calls, i.e. in a strongly
+ * connected component of more than one rule or with a call to themselves. The components are found with Tarjan's
+ * algorithm. Only rules of the same component take part in growing the seed of each other.
+ */
+final class LeftRecursion {
+
+    private final Map<String, Set<String>> leftCalls = new HashMap<>();
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final Map<String, Integer> lowLinks = new HashMap<>();
+    private final Deque<String> stack = new ArrayDeque<>();
+    private final Map<String, Integer> leftRecursive = new HashMap<>();
+    private int components;
+
+    private LeftRecursion() {
+    }
+
+    /**
+     * @return the left recursive rules, mapped to the number of their component
+     */
+    static Map<String, Integer> components(Grammar grammar, FirstSets firstSets) {
+        LeftRecursion analysis = new LeftRecursion();
+        grammar.getRules().forEach((name, expression) -> {
+            Set<String> calls = new HashSet<>();
+            collectLeftCalls(expression, firstSets, calls);
+            calls.retainAll(grammar.getRules().keySet());
+            analysis.leftCalls.put(name, calls);
+        });
+        analysis.leftCalls.keySet().stream()
+                .sorted()
+                .filter(name -> !analysis.indices.containsKey(name))
+                .forEach(analysis::connect);
+        return Map.copyOf(analysis.leftRecursive);
+    }
+
+    private static void collectLeftCalls(Expression expression, FirstSets firstSets, Set<String> calls) {
+        switch (expression) {
+            case Symbol.Terminal _, Symbol.Empty _, Operator.Cut _ -> {
+            }
+            case Symbol.NonTerminal(var name) -> calls.add(name);
+            case Operator.Sequence(var first, var second) -> {
+                collectLeftCalls(first, firstSets, calls);
+                if (firstSets.nullable(first)) {
+                    collectLeftCalls(second, firstSets, calls);
+                }
+            }
+            case Operator.OrderedChoice(var either, var or) -> {
+                collectLeftCalls(either, firstSets, calls);
+                collectLeftCalls(or, firstSets, calls);
+            }
+            case Operator.Star(var exp) -> collectLeftCalls(exp, firstSets, calls);
+            case Operator.Plus(var exp) -> collectLeftCalls(exp, firstSets, calls);
+            case Operator.Optional(var exp) -> collectLeftCalls(exp, firstSets, calls);
+            case Operator.Not(var exp) -> collectLeftCalls(exp, firstSets, calls);
+            case Operator.And(var exp) -> collectLeftCalls(exp, firstSets, calls);
+            case Operator.Group(var exp) -> collectLeftCalls(exp, firstSets, calls);
+            case Operator.Precedence precedence -> {
+                boolean nullableOperand = firstSets.nullable(precedence.operand());
+                collectLeftCalls(precedence.operand(), firstSets, calls);
+                for (Operator.Precedence.Level level : precedence.levels()) {
+                    if (nullableOperand || level.fixity() == Operator.Precedence.Fixity.PREFIX) {
+                        level.operators().forEach(operator -> collectLeftCalls(operator, firstSets, calls));
+                    }
+                }
+            }
+        }
+    }
+
+    private void connect(String rule) {
+        int index = indices.size();
+        indices.put(rule, index);
+        lowLinks.put(rule, index);
+        stack.push(rule);
+        for (String callee : leftCalls.get(rule)) {
+            if (!indices.containsKey(callee)) {
+                connect(callee);
+                lowLinks.put(rule, Math.min(lowLinks.get(rule), lowLinks.get(callee)));
+            } else if (stack.contains(callee)) {
+                lowLinks.put(rule, Math.min(lowLinks.get(rule), indices.get(callee)));
+            }
+        }
+        if (lowLinks.get(rule) == index) {
+            Set<String> component = new HashSet<>();
+            String member;
+            do {
+                member = stack.pop();
+                component.add(member);
+            } while (!member.equals(rule));
+            if (component.size() > 1 || leftCalls.get(rule).contains(rule)) {
+                int number = components++;
+                component.forEach(name -> leftRecursive.put(name, number));
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * Input split into tokens by a {@link Lexer}. Positions are token indices, the parser matches tokens by their type
+ * only, so the memo table has one position per token.
+ */
+final class LexedInput extends Input {
+
+    private final Input characters;
+    /**
+     * Start of every token in the characters, followed by the end of the last one.
+     */
+    private final int[] starts;
+    private final int[] types;
+
+    LexedInput(CharSequence text, Input characters, int[] starts, int[] types, int count) {
+        super(text, new int[1], new int[1], 0, count);
+        this.characters = characters;
+        this.starts = starts;
+        this.types = types;
+    }
+
+    /**
+     * @return the type of the token at a position before {@link #length()}
+     */
+    int type(int position) {
+        return types[position];
+    }
+
+    @Override
+    public String getRemainingToken(int index) {
+        return text(index, index + 1);
+    }
+
+    @Override
+    int match(TerminalMatcher matcher, int position) {
+        throw new RuntimeException("Terminals of a lexed input are matched by the lexer");
+    }
+
+    /**
+     * @return the first character of the token
+     */
+    @Override
+    char charAt(int position) {
+        return characters.charAt(starts[position]);
+    }
+
+    @Override
+    String text(int from, int to) {
+        return characters.text(starts[from], starts[to]);
+    }
+
+    @Override
+    int sourceOffset(int position) {
+        return characters.sourceOffset(starts[Math.min(position, length())]);
+    }
+
+    @Override
+    String unit() {
+        return "tokens";
+    }
+}
@@ -0,0 +1,181 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.datatypes.Either;
+import de.friendlyhedgehog.jetpack.grammar.Expression;
+import de.friendlyhedgehog.jetpack.grammar.Operator;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+import de.friendlyhedgehog.jetpack.util.Check;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Splits the input into tokens before parsing, see {@link Grammar#withTokens(List)}. Every terminal of the grammar
+ * outside of the token rules and every token rule is a token type. At each position the type with the longest match
+ * wins. Ties go to the terminals of the other rules first, so keywords beat identifiers, then to the token rules in
+ * their given order.
+ * <p>
+ * Like the terminals of the parser, tokens can't span whitespace. The types which can start with a character are
+ * looked up in a table like the alternatives of a {@link ChoiceNode}, so only few matchers are tried per token.
+ */
+final class Lexer {
+
+    private static final int NON_ASCII = 128;
+
+    private final TerminalMatcher[] matchers;
+    private final Map<Symbol.Terminal, Integer> terminalTypes;
+    private final Map<String, Integer> ruleTypes;
+    /**
+     * The types to try for the next character, slots {@code 0-127} are the US-ASCII characters, followed by one slot
+     * for all other characters.
+     */
+    private final int[][] candidates;
+    /**
+     * The names of the types for messages, see {@link FarthestFailure#name}, token rules by the name of the rule.
+     */
+    private final String[] names;
+
+    private Lexer(TerminalMatcher[] matchers, Map<Symbol.Terminal, Integer> terminalTypes,
+                  Map<String, Integer> ruleTypes, int[][] candidates, String[] names) {
+        this.matchers = matchers;
+        this.terminalTypes = terminalTypes;
+        this.ruleTypes = ruleTypes;
+        this.candidates = candidates;
+        this.names = names;
+    }
+
+    /**
+     * @return the lexer of the token rules of the grammar
+     */
+    static Lexer of(Grammar grammar) {
+        List<String> tokenRules = grammar.tokens();
+        Map<Symbol.Terminal, Integer> terminalTypes = new LinkedHashMap<>();
+        grammar.getRules().keySet().stream()
+                .filter(rule -> !tokenRules.contains(rule))
+                .sorted(Comparator.comparingInt(grammar::ruleId))
+                .forEach(rule -> collectTerminals(grammar.getRules().get(rule), terminalTypes));
+        List<Symbol.Terminal> terminals = new ArrayList<>(terminalTypes.keySet());
+        Map<String, Integer> ruleTypes = new HashMap<>();
+        for (String rule : tokenRules) {
+            ruleTypes.put(rule, terminals.size());
+            terminals.add(tokenTerminal(rule, grammar.getRules().get(rule)));
+        }
+        TerminalMatcher[] matchers = terminals.stream().map(TerminalMatcher::of).toArray(TerminalMatcher[]::new);
+        List<CharSet> firsts = terminals.stream().map(FirstSets::first).toList();
+        int[][] candidates = new int[NON_ASCII + 1][];
+        for (int slot = 0; slot <= NON_ASCII; ++slot) {
+            final int current = slot;
+            candidates[slot] = IntStream.range(0, matchers.length)
+                    .filter(type -> current == NON_ASCII
+                            ? firsts.get(type).containsNonAscii()
+                            : firsts.get(type).contains((char) current))
+                    .toArray();
+        }
+        String[] names = terminals.stream().map(FarthestFailure::name).toArray(String[]::new);
+        ruleTypes.forEach((rule, type) -> names[type] = rule);
+        return new Lexer(matchers, Map.copyOf(terminalTypes), Map.copyOf(ruleTypes), candidates, names);
+    }
+
+    /**
+     * Numbers the terminals in the order they appear in the expression.
+     */
+    private static void collectTerminals(Expression expression, Map<Symbol.Terminal, Integer> types) {
+        Deque<Expression> pending = new ArrayDeque<>(List.of(expression));
+        while (!pending.isEmpty()) {
+            switch (pending.pop()) {
+                case Symbol.Terminal terminal -> types.putIfAbsent(terminal, types.size());
+                case Symbol _ -> {
+                }
+                case Operator.Sequence(var first, var second) -> {
+                    pending.push(second);
+                    pending.push(first);
+                }
+                case Operator.OrderedChoice(var either, var or) -> {
+                    pending.push(or);
+                    pending.push(either);
+                }
+                case Operator.Star(var exp) -> pending.push(exp);
+                case Operator.Plus(var exp) -> pending.push(exp);
+                case Operator.Optional(var exp) -> pending.push(exp);
+                case Operator.Group(var exp) -> pending.push(exp);
+                case Operator.Not(var exp) -> pending.push(exp);
+                case Operator.And(var exp) -> pending.push(exp);
+                case Operator.Cut _ -> {
+                }
+                case Operator.Precedence precedence -> precedence.expressions().reversed().forEach(pending::push);
+            }
+        }
+    }
+
+    private static Symbol.Terminal tokenTerminal(String rule, Expression expression) {
+        if (expression instanceof Operator.Group(var inner)) {
+            return tokenTerminal(rule, inner);
+        }
+        if (expression instanceof Symbol.Terminal terminal) {
+            return terminal;
+        }
+        List<Expression> alternatives = CompiledGrammar.flatten(expression, Operator.OrderedChoice.class);
+        return TerminalMatcher.literalChoice(alternatives).orElseThrow(() -> new RuntimeException(
+                "Token rule " + rule + " has to be a terminal or a choice of literals"
+        ));
+    }
+
+    /**
+     * @return the type of a terminal outside of the token rules
+     */
+    int type(Symbol.Terminal terminal) {
+        Integer type = terminalTypes.get(terminal);
+        Check.require(type != null, "Terminal " + terminal.symbol() + " is not a token");
+        return type;
+    }
+
+    /**
+     * @return the type of a token rule, {@code null} for other rules
+     */
+    Integer type(String rule) {
+        return ruleTypes.get(rule);
+    }
+
+    String[] names() {
+        return names;
+    }
+
+    Either<Input, String> lex(CharSequence text) {
+        Input characters = Input.of(text, "\\s");
+        int[] starts = new int[16];
+        int[] types = new int[16];
+        int count = 0;
+        for (int position = 0; position < characters.length(); ++count) {
+            char next = characters.charAt(position);
+            int bestType = -1;
+            int bestEnd = position;
+            for (int type : candidates[next < NON_ASCII ? next : NON_ASCII]) {
+                int end = characters.match(matchers[type], position);
+                if (end > bestEnd) {
+                    bestType = type;
+                    bestEnd = end;
+                }
+            }
+            if (bestType == -1) {
+                return Either.or("No token matches at position " + position);
+            }
+            if (count + 1 == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                types = Arrays.copyOf(types, types.length * 2);
+            }
+            starts[count] = position;
+            types[count] = bestType;
+            position = bestEnd;
+        }
+        starts[count] = characters.length();
+        return Either.ofThis(new LexedInput(text, characters, starts, types, count));
+    }
+}
@@ -0,0 +1,39 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * Storage of the memo entries of one parse. Entries are encoded as described in {@link ParsingStateLookup}, matches
+ * may carry the handle of the parse tree of the rule in the {@link TreeBuffer} of the parse.
+ */
+sealed interface MemoStore extends AutoCloseable permits HeapMemoStore, OffHeapMemoStore {
+
+    /**
+     * @return the entry or {@link ParsingStateLookup#ABSENT} if the rule was not applied at the position yet
+     */
+    int get(int ruleId, int position);
+
+    /**
+     * @return the handle of the parse tree stored with the entry, {@link ParsingStateLookup#ABSENT} if the entry
+     * was stored without one
+     */
+    int getParseTree(int ruleId, int position);
+
+    /**
+     * Stores an entry without parse tree.
+     */
+    void insert(int ruleId, int position, int entry);
+
+    void insert(int ruleId, int position, int entry, int parseTree);
+
+    /**
+     * @return the number of entries
+     */
+    int size();
+
+    /**
+     * Discards all entries before the position.
+     */
+    void removeBefore(int position);
+
+    @Override
+    void close();
+}
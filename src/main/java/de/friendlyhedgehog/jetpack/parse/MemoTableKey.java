@@ -1,4 +0,0 @@
-package de.friendlyhedgehog.jetpack.parse;
-
-record MemoTableKey(String name, int position) {
-}
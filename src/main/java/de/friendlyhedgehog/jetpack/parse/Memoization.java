@@ -0,0 +1,22 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * Whether the results of a rule are stored in the memo table. Left recursive rules are always memoized, because growing
+ * their seed relies on the memo table.
+ */
+public enum Memoization {
+    /**
+     * Every result is memoized, which guarantees linear time.
+     */
+    ALWAYS,
+    /**
+     * The rule is evaluated again at every application. Suited for cheap rules like single terminals, for which the
+     * memo entry costs more than matching again.
+     */
+    NEVER,
+    /**
+     * The rule is memoized until it turns out that its entries are rarely reused during the parse, see
+     * {@link AdaptiveMemoization}.
+     */
+    ADAPTIVE
+}
@@ -0,0 +1,75 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.datatypes.Node;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the parse tree out of {@link Node}s. Handles are keys of the nodes of memoized rules. All other nodes are only
+ * referenced by the buffer and their parents, so a subtree dropped on backtracking is released right away, a memoized
+ * one once its memo entry is discarded.
+ */
+final class NodeTreeBuffer implements TreeBuffer {
+
+    private final List<Node<Symbol>> nodes = new ArrayList<>();
+    private final Map<Integer, Memoized> memoized = new HashMap<>();
+    private int nextHandle;
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public void truncate(int size) {
+        nodes.subList(size, nodes.size()).clear();
+    }
+
+    @Override
+    public void addTerminal(Input input, int start, int end) {
+        nodes.add(Node.leaf(new Symbol.Terminal(input.text(start, end))));
+    }
+
+    @Override
+    public void wrap(int from, int to, RuleNode rule, int start, int end) {
+        collapse(from, to, rule);
+    }
+
+    @Override
+    public int wrapMemoized(int from, RuleNode rule, int start, int end) {
+        memoized.put(nextHandle, new Memoized(collapse(from, nodes.size(), rule), start));
+        return nextHandle++;
+    }
+
+    private Node<Symbol> collapse(int from, int to, RuleNode rule) {
+        List<Node<Symbol>> children = nodes.subList(from, to);
+        Node<Symbol> node = Node.of(rule.nonTerminal(), List.copyOf(children));
+        children.clear();
+        nodes.add(from, node);
+        return node;
+    }
+
+    @Override
+    public void add(int handle) {
+        nodes.add(memoized.get(handle).node());
+    }
+
+    @Override
+    public void removeBefore(int position) {
+        memoized.values().removeIf(entry -> entry.start() < position);
+    }
+
+    List<Node<Symbol>> nodes() {
+        return nodes;
+    }
+
+    /**
+     * @param start the position the memo entry of the node is stored at
+     */
+    private record Memoized(Node<Symbol> node, int start) {
+    }
+}
@@ -0,0 +1,15 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * Negative lookahead. The body is only recognized, it never contributes to the parse tree.
+ */
+record NotNode(ParserNode body) implements ParserNode {
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        parsingState.enterBacktrackPoint();
+        int end = body.parse(input, position, parsingState, null);
+        parsingState.exitBacktrackPoint();
+        return end == FAIL ? position : FAIL;
+    }
+}
@@ -0,0 +1,172 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Keeps the memo entries outside the heap. Every entry is a fixed size record in a {@link MemorySegment}, holding the
+ * rule id and position as key, the entry itself and the handle of its parse tree. Keys are stored incremented by one,
+ * so zeroed memory marks free slots.
+ * The segment is an open addressing table with linear probing, allocated from a confined {@link Arena}. Growing the
+ * table moves the entries into a new arena and closes the old one, closing the store releases all memory.
+ * <p>
+ * The table starts small and doubles once it is half full, so the memory used follows the number of entries rather
+ * than the length of the input. It holds at most {@link #MAX_CAPACITY} slots.
+ */
+final class OffHeapMemoStore implements MemoStore {
+
+    private static final long ENTRY_SIZE = 16;
+    private static final long KEY = 0;
+    private static final long ENTRY = 8;
+    private static final long TREE = 12;
+
+    private static final long FREE = 0;
+
+    private static final long DEFAULT_CAPACITY = 1024;
+    /**
+     * 16 GiB of entries.
+     */
+    static final long MAX_CAPACITY = 1L << 30;
+
+    private Arena arena;
+    private MemorySegment entries;
+    private long capacity;
+    private int shift;
+    private int size;
+
+    OffHeapMemoStore() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public int get(int ruleId, int position) {
+        long entry = find(key(ruleId, position));
+        if (entries.get(ValueLayout.JAVA_LONG, entry + KEY) == FREE) {
+            return ParsingStateLookup.ABSENT;
+        }
+        return entries.get(ValueLayout.JAVA_INT, entry + ENTRY);
+    }
+
+    @Override
+    public int getParseTree(int ruleId, int position) {
+        long entry = find(key(ruleId, position));
+        if (entries.get(ValueLayout.JAVA_LONG, entry + KEY) == FREE) {
+            return ParsingStateLookup.ABSENT;
+        }
+        return entries.get(ValueLayout.JAVA_INT, entry + TREE);
+    }
+
+    @Override
+    public void insert(int ruleId, int position, int value) {
+        insert(ruleId, position, value, ParsingStateLookup.ABSENT);
+    }
+
+    @Override
+    public void insert(int ruleId, int position, int value, int parseTree) {
+        long key = key(ruleId, position);
+        long entry = find(key);
+        boolean isNew = entries.get(ValueLayout.JAVA_LONG, entry + KEY) == FREE;
+        entries.set(ValueLayout.JAVA_LONG, entry + KEY, key);
+        entries.set(ValueLayout.JAVA_INT, entry + ENTRY, value);
+        entries.set(ValueLayout.JAVA_INT, entry + TREE, parseTree);
+        if (isNew && ++size * 2 > capacity) {
+            grow();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void removeBefore(int position) {
+        Arena oldArena = arena;
+        MemorySegment oldEntries = entries;
+        long oldCapacity = capacity;
+        int remaining = 0;
+        for (long slot = 0; slot < oldCapacity; ++slot) {
+            long key = oldEntries.get(ValueLayout.JAVA_LONG, slot * ENTRY_SIZE + KEY);
+            if (key != FREE && position(key) >= position) {
+                ++remaining;
+            }
+        }
+        allocate(capacityFor(remaining));
+        size = remaining;
+        for (long slot = 0; slot < oldCapacity; ++slot) {
+            long oldEntry = slot * ENTRY_SIZE;
+            long key = oldEntries.get(ValueLayout.JAVA_LONG, oldEntry + KEY);
+            if (key != FREE && position(key) >= position) {
+                MemorySegment.copy(oldEntries, oldEntry, entries, find(key), ENTRY_SIZE);
+            }
+        }
+        oldArena.close();
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    /**
+     * @return offset of the entry with the key, or of the free entry where it has to be inserted
+     */
+    private long find(long key) {
+        long mask = capacity - 1;
+        for (long slot = slot(key); ; slot = (slot + 1) & mask) {
+            long entry = slot * ENTRY_SIZE;
+            long storedKey = entries.get(ValueLayout.JAVA_LONG, entry + KEY);
+            if (storedKey == FREE || storedKey == key) {
+                return entry;
+            }
+        }
+    }
+
+    private void grow() {
+        Arena oldArena = arena;
+        MemorySegment oldEntries = entries;
+        long oldCapacity = capacity;
+        allocate(capacityFor(size));
+        for (long slot = 0; slot < oldCapacity; ++slot) {
+            long oldEntry = slot * ENTRY_SIZE;
+            long key = oldEntries.get(ValueLayout.JAVA_LONG, oldEntry + KEY);
+            if (key != FREE) {
+                MemorySegment.copy(oldEntries, oldEntry, entries, find(key), ENTRY_SIZE);
+            }
+        }
+        oldArena.close();
+    }
+
+    /**
+     * @return the smallest power of two keeping the table at most half full, at least {@link #DEFAULT_CAPACITY}
+     */
+    static long capacityFor(long entries) {
+        long capacity = Math.max(DEFAULT_CAPACITY, Long.highestOneBit(Math.max(entries * 2, 1) - 1) << 1);
+        if (capacity > MAX_CAPACITY) {
+            throw new RuntimeException("The off heap memo table can't hold more than " + MAX_CAPACITY / 2 +
+                    " entries, " + entries + " are needed");
+        }
+        return capacity;
+    }
+
+    private void allocate(long newCapacity) {
+        arena = Arena.ofConfined();
+        entries = arena.allocate(newCapacity * ENTRY_SIZE, ValueLayout.JAVA_LONG.byteAlignment());
+        entries.fill((byte) 0);
+        capacity = newCapacity;
+        shift = 64 - Long.numberOfTrailingZeros(newCapacity);
+    }
+
+    private long slot(long key) {
+        return (key * 0x9E3779B97F4A7C15L) >>> shift;
+    }
+
+    private static long key(int ruleId, int position) {
+        return (((long) ruleId << 32) | (position & 0xFFFFFFFFL)) + 1;
+    }
+
+    private static int position(long key) {
+        return (int) (key - 1);
+    }
+}
@@ -0,0 +1,12 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+record OptionalNode(ParserNode body) implements ParserNode {
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        parsingState.enterBacktrackPoint();
+        int end = body.parse(input, position, parsingState, tree);
+        parsingState.exitBacktrackPoint();
+        return end == FAIL ? position : end;
+    }
+}
@@ -0,0 +1,64 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.util.Check;
+
+/**
+ * Settings for a single parse.
+ *
+ * @param memoBackend   where the memo entries of the parse are stored
+ * @param engine        how the compiled grammar is evaluated
+ * @param terminalCache whether the outcomes of terminals are cached, see {@link #withTerminalCache(boolean)}
+ */
+public record ParseOptions(MemoBackend memoBackend, Engine engine, boolean terminalCache) {
+
+    public ParseOptions {
+        Check.requireNotNull("Parse options can't be null", memoBackend, engine);
+    }
+
+    public static ParseOptions defaults() {
+        return new ParseOptions(MemoBackend.HEAP, Engine.RECURSIVE, false);
+    }
+
+    public ParseOptions withMemoBackend(MemoBackend memoBackend) {
+        return new ParseOptions(memoBackend, engine, terminalCache);
+    }
+
+    public ParseOptions withEngine(Engine engine) {
+        return new ParseOptions(memoBackend, engine, terminalCache);
+    }
+
+    /**
+     * Only rules are memoized, a terminal is matched again whenever backtracking returns to its position, e.g. by
+     * every alternative of a choice starting with it. The terminal cache keeps the outcomes of the terminals at
+     * recent positions. It pays off for grammars which backtrack a lot over terminals that are expensive to match,
+     * like regular expressions which can't be compiled into a DFA.
+     */
+    public ParseOptions withTerminalCache(boolean terminalCache) {
+        return new ParseOptions(memoBackend, engine, terminalCache);
+    }
+
+    public enum MemoBackend {
+        /**
+         * Memo entries are kept in a table on the heap.
+         */
+        HEAP,
+        /**
+         * Memo entries are kept in native memory which is released after the parse. Only the parse trees stay on the
+         * heap. Meant for very large inputs, for which the memo table would put pressure on the garbage collector.
+         */
+        OFF_HEAP
+    }
+
+    public enum Engine {
+        /**
+         * Every rule and operator is evaluated in its own stack frame. Deeply nested input may exhaust the thread
+         * stack.
+         */
+        RECURSIVE,
+        /**
+         * Evaluation runs on an explicit stack on the heap, the nesting depth of the input is only limited by memory.
+         * Suited for untrusted input and for threads with small stacks, like virtual threads.
+         */
+        ITERATIVE
+    }
+}
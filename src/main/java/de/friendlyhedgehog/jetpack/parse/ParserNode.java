@@ -0,0 +1,35 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * A node of a {@link CompiledGrammar}. Every {@link de.friendlyhedgehog.jetpack.grammar.Expression} is translated into
+ * exactly one node, non-terminals are replaced by a direct reference to the {@link RuleNode} of the rule.
+ */
+sealed interface ParserNode permits
+        TerminalNode,
+        LayoutNode,
+        TokenNode,
+        EmptyNode,
+        RuleNode,
+        SequenceNode,
+        ChoiceNode,
+        StarNode,
+        PlusNode,
+        OptionalNode,
+        NotNode,
+        AndNode,
+        CutNode,
+        PrecedenceNode {
+
+    /**
+     * Returned by {@link #parse} if the node does not match.
+     */
+    int FAIL = -1;
+
+    /**
+     * Matches the node at the given position. A node that does not match leaves the tree buffer as it found it.
+     *
+     * @param tree receives the parse tree of the match, {@code null} if the input is only recognized
+     * @return the position after the match or {@link #FAIL}
+     */
+    int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree);
+}
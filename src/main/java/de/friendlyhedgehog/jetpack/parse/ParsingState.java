@@ -1,18 +1,274 @@
 package de.friendlyhedgehog.jetpack.parse;
 
-import de.friendlyhedgehog.jetpack.datatypes.MemoTable;
+import lombok.AccessLevel;
 import lombok.Getter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
 @Getter
-class ParsingState {
+class ParsingState implements AutoCloseable {
+
+    private final MemoStore lookup;
+    /**
+     * {@code null} if terminals are matched every time.
+     */
+    private final TerminalCache terminalCache;
+    private final AdaptiveMemoization adaptiveMemoization = new AdaptiveMemoization();
+    /**
+     * Set while a left recursive rule is grown, {@code null} otherwise.
+     */
+    private Growing growing;
+    /**
+     * One growing per nesting depth of left recursions being grown. Each is reused by every iteration of its left
+     * recursion and by later left recursions at the same depth, so growing a seed allocates nothing.
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<Growing> growings = new ArrayList<>();
+    @Getter(AccessLevel.NONE)
+    private int growingDepth;
+    /**
+     * The applications of left recursive rules whose seed is being evaluated, innermost last, and whether their seed
+     * was hit. Kept apart from the memo table, in which growing a nested left recursion at the same position may
+     * overwrite the {@link ParsingStateLookup#LEFT_RECURSION} entry of the rule.
+     */
+    @Getter(AccessLevel.NONE)
+    private int[] seedRules = new int[16];
+    @Getter(AccessLevel.NONE)
+    private int[] seedPositions = new int[16];
+    @Getter(AccessLevel.NONE)
+    private boolean[] seedsHit = new boolean[16];
+    @Getter(AccessLevel.NONE)
+    private int seeds;
+    /**
+     * {@code null} if failures are not tracked.
+     */
+    @Getter(AccessLevel.NONE)
+    private FarthestFailure farthestFailure;
+    /**
+     * The tree whose memoized nodes are released with their memo entries, {@code null} if none is.
+     */
+    @Getter(AccessLevel.NONE)
+    private TreeBuffer tree;
+    /**
+     * Number of nodes being evaluated which may continue at an earlier position than the current one: choices which
+     * have not passed a cut, repetitions, options, predicates and left recursive rules. Without any, the parse never
+     * returns before the current position and the memo entries before it are not needed anymore.
+     */
+    private int backtrackPoints;
+    /**
+     * Whether the innermost choice being evaluated has passed a cut.
+     */
+    private boolean cut;
+    /**
+     * Memo entries are only discarded once there are this many, so the cost of compacting the memo table is amortized.
+     */
+    private int compactionSize = MIN_COMPACTION_SIZE;
 
-    private final MemoTable<MemoTableKey, ParsingStateLookup> lookup;
+    static final int MIN_COMPACTION_SIZE = 4096;
 
-    private ParsingState() {
-        lookup = MemoTable.of();
+    private ParsingState(MemoStore lookup, TerminalCache terminalCache) {
+        this.lookup = lookup;
+        this.terminalCache = terminalCache;
     }
 
     public static ParsingState of() {
-        return new ParsingState();
+        return new ParsingState(new HeapMemoStore(), null);
+    }
+
+    /**
+     * @param terminalCount number of distinct terminals of the grammar, used for the terminal cache
+     */
+    public static ParsingState of(ParseOptions options, Input input, int terminalCount) {
+        MemoStore lookup = switch (options.memoBackend()) {
+            case HEAP -> new HeapMemoStore();
+            case OFF_HEAP -> new OffHeapMemoStore();
+        };
+        boolean cached = options.terminalCache() && terminalCount > 0;
+        return new ParsingState(lookup, cached ? new TerminalCache(terminalCount, input.length()) : null);
+    }
+
+    void trackFailures(FarthestFailure farthestFailure) {
+        this.farthestFailure = farthestFailure;
+    }
+
+    /**
+     * @param tree receives the parse tree, its memoized nodes are released when memo entries are discarded, see
+     *             {@link #commit}
+     */
+    void buildTree(TreeBuffer tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Called by a terminal failing while the tree is built, see {@link FarthestFailure}.
+     */
+    void fail(int terminal, int position) {
+        if (farthestFailure != null) {
+            farthestFailure.fail(terminal, position);
+        }
+    }
+
+    /**
+     * @return whether failures are tracked and none failed after the position yet
+     */
+    boolean isFarthestFailure(int position) {
+        return farthestFailure != null && position >= farthestFailure.position();
+    }
+
+    /**
+     * Starts evaluating the seed of a left recursive rule at the position.
+     */
+    void enterSeed(int rule, int position) {
+        if (seeds == seedRules.length) {
+            seedRules = Arrays.copyOf(seedRules, seeds * 2);
+            seedPositions = Arrays.copyOf(seedPositions, seeds * 2);
+            seedsHit = Arrays.copyOf(seedsHit, seeds * 2);
+        }
+        seedRules[seeds] = rule;
+        seedPositions[seeds] = position;
+        seedsHit[seeds] = false;
+        ++seeds;
+    }
+
+    /**
+     * Marks the rule as left recursive at the position, its seed is being evaluated there.
+     */
+    void hitSeed(int rule, int position) {
+        for (int seed = seeds - 1; seed >= 0; --seed) {
+            if (seedRules[seed] == rule && seedPositions[seed] == position) {
+                seedsHit[seed] = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ends evaluating the innermost seed.
+     *
+     * @return whether the seed was hit, so it has to be grown
+     */
+    boolean exitSeed() {
+        return seedsHit[--seeds];
+    }
+
+    void setGrowing(Growing growing) {
+        this.growing = growing;
+    }
+
+    /**
+     * Starts growing the seed of a left recursion, nested in the ones being grown already.
+     */
+    void enterGrowing() {
+        if (growingDepth == growings.size()) {
+            growings.add(new Growing());
+        }
+        ++growingDepth;
+    }
+
+    /**
+     * Starts an iteration of growing the innermost left recursion, in which only the rule itself is involved yet.
+     */
+    void growIteration(RuleNode rule, int position, int component) {
+        Growing next = growings.get(growingDepth - 1);
+        next.limits.clear();
+        next.limits.set(rule.id());
+        next.position = position;
+        next.component = component;
+        growing = next;
+    }
+
+    void exitGrowing() {
+        --growingDepth;
+    }
+
+    void enterBacktrackPoint() {
+        ++backtrackPoints;
+    }
+
+    void exitBacktrackPoint() {
+        --backtrackPoints;
+    }
+
+    /**
+     * Opens the scope of a choice, cuts in its alternatives commit to it.
+     *
+     * @return whether the enclosing choice has passed a cut, to be passed to {@link #exitChoice(boolean)}
+     */
+    boolean enterChoice() {
+        boolean outerCut = cut;
+        cut = false;
+        ++backtrackPoints;
+        return outerCut;
+    }
+
+    void exitChoice(boolean outerCut) {
+        if (!cut) {
+            --backtrackPoints;
+        }
+        cut = outerCut;
+    }
+
+    /**
+     * Commits the innermost choice to its current alternative, which is no backtrack point anymore.
+     */
+    void cut(int position) {
+        if (!cut) {
+            cut = true;
+            --backtrackPoints;
+        }
+        commit(position);
+    }
+
+    /**
+     * Called where the parse continues at the given position or fails. If no backtrack point is being evaluated, the
+     * memo entries before the position are discarded, so a long input is parsed with a bounded memo table. The nodes
+     * of the tree stored with them are released as well.
+     */
+    void commit(int position) {
+        if (backtrackPoints == 0 && lookup.size() >= compactionSize) {
+            lookup.removeBefore(position);
+            if (tree != null) {
+                tree.removeBefore(position);
+            }
+            compactionSize = Math.max(MIN_COMPACTION_SIZE, lookup.size() * 2);
+        }
+    }
+
+    @Override
+    public void close() {
+        lookup.close();
+    }
+
+    /**
+     * The rules which are already involved in the current iteration of growing the seed of a left recursion at the
+     * position, as a bit set over the rule ids.
+     */
+    static final class Growing {
+
+        private final BitSet limits = new BitSet();
+        private int position;
+        /**
+         * The left recursive component of the grown rule, see {@link LeftRecursion}.
+         */
+        private int component;
+
+        int position() {
+            return position;
+        }
+
+        int component() {
+            return component;
+        }
+
+        boolean isInvolved(RuleNode rule) {
+            return limits.get(rule.id());
+        }
+
+        void involve(RuleNode rule) {
+            limits.set(rule.id());
+        }
     }
 }
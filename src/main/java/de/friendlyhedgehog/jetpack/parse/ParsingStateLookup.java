@@ -1,22 +1,31 @@
 package de.friendlyhedgehog.jetpack.parse;
 
-import de.friendlyhedgehog.jetpack.datatypes.Node;
-import de.friendlyhedgehog.jetpack.grammar.Symbol;
-
-import java.util.List;
-
-sealed interface ParsingStateLookup {
-
-    boolean growLr();
-
-    record Fail(boolean growLr) implements ParsingStateLookup {
+import de.friendlyhedgehog.jetpack.datatypes.PackedMemoTable;
+
+/**
+ * Memo entries are plain ints. A non-negative entry is the position after a match of the rule, every other entry is
+ * one of the constants below.
+ */
+final class ParsingStateLookup {
+
+    /**
+     * The rule was not applied at the position yet.
+     */
+    static final int ABSENT = PackedMemoTable.ABSENT;
+    /**
+     * Stored before the body of the rule is evaluated, hitting it means the rule is left recursive.
+     */
+    static final int SEED = -2;
+    /**
+     * The seed was hit, the rule is left recursive at the position. Fails like a mismatch.
+     */
+    static final int LEFT_RECURSION = -3;
+    static final int MISMATCH = -4;
+
+    private ParsingStateLookup() {
     }
 
-    record MisMatch(boolean growLr) implements ParsingStateLookup {
-
-    }
-
-    record Match(int parsePosition, List<Node<Symbol>> parseTree, boolean growLr) implements ParsingStateLookup {
-
+    static boolean isMatch(int entry) {
+        return entry >= 0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,13 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+record PlusNode(ParserNode body) implements ParserNode {
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        int first = body.parse(input, position, parsingState, tree);
+        if (first == FAIL) {
+            return FAIL;
+        }
+        return StarNode.repeat(body, input, first, parsingState, tree);
+    }
+}
@@ -0,0 +1,275 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.grammar.Operator;
+
+import java.util.Arrays;
+
+/**
+ * Operator precedence of a rule, see {@link Operator.Precedence}. After an operand, only operators binding at least
+ * as tight as the current minimum are applied, the operand to their right is climbed with a higher minimum. So each
+ * operand and operator is matched once, instead of once per level of precedence.
+ * <p>
+ * Every application of an operator becomes a node of the rule with the operands and the operator as children, e.g.
+ * {@code Expr <- Num %left "-" %left "\\*"} parses {@code 1 - 2 * 3 - 4} into
+ * {@code Expr(Expr(Num, -, Expr(Num, *, Num)), -, Num)}. The outermost application is wrapped by the rule itself.
+ * Operators have to consume input, an operator matching the empty string is treated as not matching.
+ *
+ * @param prefixes the prefix operators in the order they are tried
+ * @param suffixes the infix and postfix operators in the order they are tried
+ */
+record PrecedenceNode(RuleNode rule, ParserNode operand, Operation[] prefixes, Operation[] suffixes)
+        implements ParserNode {
+
+    /**
+     * @param level the index of the level of precedence, higher levels bind tighter
+     */
+    record Operation(ParserNode operator, int level, Operator.Precedence.Fixity fixity) {
+
+        /**
+         * @return the minimum level of the operators applied in the operand to the right
+         */
+        int rightLevel() {
+            return fixity == Operator.Precedence.Fixity.LEFT ? level + 1 : level;
+        }
+    }
+
+    /**
+     * Applications of the node can nest, e.g. through a parenthesized operand, so it is a backtrack point while it is
+     * applied.
+     */
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        parsingState.enterBacktrackPoint();
+        Climb climb = new Climb(this, position, tree);
+        ParserNode next = climb.start();
+        while (next != null) {
+            next = climb.next(next.parse(input, climb.position(), parsingState, tree));
+        }
+        parsingState.exitBacktrackPoint();
+        return climb.result();
+    }
+
+    /**
+     * One application of the node. The operands climbed to the right are kept on an explicit stack of frames instead
+     * of the Java stack, so the {@link IterativeEngine} runs the same steps. Each step returns the node to match at
+     * {@link #position()} and takes its result, until the application is finished.
+     */
+    static final class Climb {
+
+        private static final int MIN_LEVEL = 0;
+        private static final int START = 1;
+        /**
+         * Size of the tree buffer when the frame was entered.
+         */
+        private static final int MARK = 2;
+        private static final int END = 3;
+        /**
+         * Whether the frame already applied an operator, so its children have to be wrapped before they become an
+         * operand.
+         */
+        private static final int APPLIED = 4;
+        private static final int STAGE = 5;
+        /**
+         * Index of the operator being tried.
+         */
+        private static final int OPERATOR = 6;
+        /**
+         * Size of the tree buffer before the operator being tried.
+         */
+        private static final int OPERATOR_MARK = 7;
+        private static final int FRAME_SIZE = 8;
+
+        private static final int TRY_PREFIX = 0;
+        private static final int PREFIX = 1;
+        private static final int PREFIX_OPERAND = 2;
+        private static final int OPERAND = 3;
+        private static final int TRY_SUFFIX = 4;
+        private static final int SUFFIX = 5;
+        private static final int SUFFIX_OPERAND = 6;
+
+        private final PrecedenceNode node;
+        private final TreeBuffer tree;
+        private int[] frames = new int[4 * FRAME_SIZE];
+        private int depth;
+        private int position;
+        private int result;
+
+        Climb(PrecedenceNode node, int position, TreeBuffer tree) {
+            this.node = node;
+            this.tree = tree;
+            push(0, position);
+        }
+
+        ParserNode start() {
+            return step(FAIL);
+        }
+
+        /**
+         * @param result the result of the node returned by the previous step
+         * @return the next node to match or {@code null} if the application is finished
+         */
+        ParserNode next(int result) {
+            return step(result);
+        }
+
+        int position() {
+            return position;
+        }
+
+        /**
+         * @return the end of the application or {@link #FAIL}, once it is finished
+         */
+        int result() {
+            return result;
+        }
+
+        private ParserNode step(int result) {
+            while (true) {
+                int frame = (depth - 1) * FRAME_SIZE;
+                int operator = frames[frame + OPERATOR];
+                switch (frames[frame + STAGE]) {
+                    case TRY_PREFIX -> {
+                        int start = frames[frame + START];
+                        if (operator < node.prefixes.length) {
+                            frames[frame + STAGE] = PREFIX;
+                            return request(node.prefixes[operator].operator(), start);
+                        }
+                        frames[frame + STAGE] = OPERAND;
+                        return request(node.operand, start);
+                    }
+                    case PREFIX -> {
+                        if (result == FAIL || result == frames[frame + START]) {
+                            truncate(frames[frame + MARK]);
+                            retry(frame, TRY_PREFIX);
+                        } else {
+                            frames[frame + STAGE] = PREFIX_OPERAND;
+                            push(node.prefixes[operator].level(), result);
+                        }
+                    }
+                    case PREFIX_OPERAND -> {
+                        if (result == FAIL) {
+                            truncate(frames[frame + MARK]);
+                            retry(frame, TRY_PREFIX);
+                        } else {
+                            operand(frame, result, 1);
+                        }
+                    }
+                    case OPERAND -> {
+                        if (result == FAIL) {
+                            if (pop(FAIL)) {
+                                return null;
+                            }
+                            result = FAIL;
+                        } else {
+                            operand(frame, result, 0);
+                        }
+                    }
+                    case TRY_SUFFIX -> {
+                        Operation[] suffixes = node.suffixes;
+                        while (operator < suffixes.length && suffixes[operator].level() < frames[frame + MIN_LEVEL]) {
+                            ++operator;
+                        }
+                        if (operator < suffixes.length) {
+                            frames[frame + OPERATOR] = operator;
+                            frames[frame + OPERATOR_MARK] = RuleNode.mark(tree);
+                            frames[frame + STAGE] = SUFFIX;
+                            return request(suffixes[operator].operator(), frames[frame + END]);
+                        }
+                        result = frames[frame + END];
+                        if (frames[frame + APPLIED] == 1 && depth > 1 && tree != null) {
+                            tree.wrap(frames[frame + MARK], node.rule, frames[frame + START], result);
+                        }
+                        if (pop(result)) {
+                            return null;
+                        }
+                    }
+                    case SUFFIX -> {
+                        Operation suffix = node.suffixes[operator];
+                        if (result == FAIL || result == frames[frame + END]) {
+                            truncate(frames[frame + OPERATOR_MARK]);
+                            retry(frame, TRY_SUFFIX);
+                        } else if (suffix.fixity() == Operator.Precedence.Fixity.POSTFIX) {
+                            apply(frame, result);
+                        } else {
+                            frames[frame + STAGE] = SUFFIX_OPERAND;
+                            push(suffix.rightLevel(), result);
+                        }
+                    }
+                    case SUFFIX_OPERAND -> {
+                        if (result == FAIL) {
+                            truncate(frames[frame + OPERATOR_MARK]);
+                            retry(frame, TRY_SUFFIX);
+                        } else {
+                            apply(frame, result);
+                        }
+                    }
+                    default -> throw new IllegalStateException("Unknown stage " + frames[frame + STAGE]);
+                }
+            }
+        }
+
+        private ParserNode request(ParserNode operator, int position) {
+            this.position = position;
+            return operator;
+        }
+
+        /**
+         * Continues with the next operator after the current one failed.
+         */
+        private void retry(int frame, int stage) {
+            ++frames[frame + OPERATOR];
+            frames[frame + STAGE] = stage;
+        }
+
+        /**
+         * Continues with the operators after the operand of the frame.
+         */
+        private void operand(int frame, int end, int applied) {
+            frames[frame + END] = end;
+            frames[frame + APPLIED] = applied;
+            frames[frame + OPERATOR] = 0;
+            frames[frame + STAGE] = TRY_SUFFIX;
+        }
+
+        /**
+         * The infix or postfix operator and its right operand matched, the previous application becomes the left
+         * operand.
+         */
+        private void apply(int frame, int end) {
+            if (frames[frame + APPLIED] == 1 && tree != null) {
+                tree.wrap(frames[frame + MARK], frames[frame + OPERATOR_MARK], node.rule,
+                        frames[frame + START], frames[frame + END]);
+            }
+            operand(frame, end, 1);
+        }
+
+        private void truncate(int mark) {
+            if (tree != null) {
+                tree.truncate(mark);
+            }
+        }
+
+        private void push(int minLevel, int start) {
+            int frame = depth * FRAME_SIZE;
+            if (frame + FRAME_SIZE > frames.length) {
+                frames = Arrays.copyOf(frames, frames.length * 2);
+            }
+            frames[frame + MIN_LEVEL] = minLevel;
+            frames[frame + START] = start;
+            frames[frame + MARK] = RuleNode.mark(tree);
+            frames[frame + APPLIED] = 0;
+            frames[frame + STAGE] = TRY_PREFIX;
+            frames[frame + OPERATOR] = 0;
+            ++depth;
+        }
+
+        /**
+         * @return whether the outermost frame was popped, which finishes the application
+         */
+        private boolean pop(int result) {
+            --depth;
+            this.result = result;
+            return depth == 0;
+        }
+    }
+}
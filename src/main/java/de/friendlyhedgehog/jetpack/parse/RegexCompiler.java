@@ -0,0 +1,570 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Translates a regular expression into a {@link TerminalMatcher.Dfa}. The supported subset of
+ * {@link java.util.regex.Pattern} consists of characters, escapes, {@code .}, character classes with ranges and
+ * negation, the predefined classes {@code \d \w \s}, groups, alternation and greedy or reluctant quantifiers.
+ * Anchors, back references, lookaround, possessive quantifiers, class intersections, repetitions of terms that can
+ * match the empty string and everything else leads to {@link Optional#empty()}, such patterns are left to
+ * {@link java.util.regex.Pattern}.
+ * <p>
+ * {@link java.util.regex.Matcher#lookingAt()} does not find the longest match, but the first one in order of the
+ * alternatives and quantifier preferences. To match the same text, the pattern is first compiled into a program for a
+ * Thompson NFA, whose splits are ordered by priority. A DFA state is the list of NFA threads ordered by priority, every
+ * thread behind a finished match is dropped, because any match it could find has a lower priority. So the last match
+ * while running the DFA is the one the backtracking engine would find.
+ * <p>
+ * The DFA compares UTF-16 chars, a supplementary character counts as two characters for {@code .} and classes.
+ */
+final class RegexCompiler {
+
+    /**
+     * Patterns with larger programs or automatons are left to {@link java.util.regex.Pattern}.
+     */
+    static final int MAX_INSTRUCTIONS = 4096;
+    static final int MAX_STATES = 1024;
+
+    private static final int REPEAT_UNBOUNDED = -1;
+    private static final char LAST_CHAR = Character.MAX_VALUE;
+
+    private static final int CHARS = 0;
+    private static final int SPLIT = 1;
+    private static final int MATCH = 2;
+
+    private final String pattern;
+    private final boolean caseSensitive;
+    private int position;
+
+    private final List<int[]> sets = new ArrayList<>();
+    private int[] operations = new int[16];
+    /**
+     * Set index of {@link #CHARS}, preferred branch of {@link #SPLIT}.
+     */
+    private int[] arguments = new int[16];
+    /**
+     * Next instruction of {@link #CHARS}, other branch of {@link #SPLIT}.
+     */
+    private int[] nexts = new int[16];
+    private int instructions;
+
+    private RegexCompiler(String pattern, boolean caseSensitive) {
+        this.pattern = pattern;
+        this.caseSensitive = caseSensitive;
+    }
+
+    /**
+     * @return the automaton matching the same text as {@link java.util.regex.Matcher#lookingAt()}, if the pattern is
+     * supported
+     */
+    static Optional<TerminalMatcher.Dfa> compile(String pattern, boolean caseSensitive) {
+        try {
+            return Optional.of(new RegexCompiler(pattern, caseSensitive).compile());
+        } catch (UnsupportedPattern e) {
+            return Optional.empty();
+        }
+    }
+
+    private TerminalMatcher.Dfa compile() {
+        Term term = parseAlternation();
+        if (position != pattern.length()) {
+            throw new UnsupportedPattern();
+        }
+        int match = emit(MATCH, 0, 0);
+        int start = emit(term, match);
+        return determinize(start);
+    }
+
+    // --- Parsing into terms ---
+
+    private sealed interface Term {
+    }
+
+    /**
+     * @param ranges sorted, disjoint and not adjacent pairs of first and last character, both inclusive
+     */
+    private record Chars(int[] ranges) implements Term {
+    }
+
+    private record Concatenation(List<Term> terms) implements Term {
+    }
+
+    private record Alternation(List<Term> alternatives) implements Term {
+    }
+
+    /**
+     * @param max {@link #REPEAT_UNBOUNDED} for no upper limit
+     */
+    private record Repetition(Term term, int min, int max, boolean greedy) implements Term {
+    }
+
+    private static final class UnsupportedPattern extends RuntimeException {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private UnsupportedPattern() {
+            super(null, null, false, false);
+        }
+    }
+
+    private Term parseAlternation() {
+        List<Term> alternatives = new ArrayList<>(List.of(parseConcatenation()));
+        while (position < pattern.length() && pattern.charAt(position) == '|') {
+            ++position;
+            alternatives.add(parseConcatenation());
+        }
+        return alternatives.size() == 1 ? alternatives.getFirst() : new Alternation(alternatives);
+    }
+
+    private Term parseConcatenation() {
+        List<Term> terms = new ArrayList<>();
+        while (position < pattern.length() && pattern.charAt(position) != '|' && pattern.charAt(position) != ')') {
+            terms.add(parseQuantifier(parseAtom()));
+        }
+        return terms.size() == 1 ? terms.getFirst() : new Concatenation(terms);
+    }
+
+    private Term parseAtom() {
+        char c = pattern.charAt(position++);
+        return switch (c) {
+            case '(' -> {
+                if (pattern.startsWith("?", position)) {
+                    if (!pattern.startsWith("?:", position)) {
+                        throw new UnsupportedPattern();
+                    }
+                    position += 2;
+                }
+                Term group = parseAlternation();
+                expect(')');
+                yield group;
+            }
+            case '[' -> parseClass();
+            case '.' -> new Chars(lineTerminatorsComplement());
+            case '\\' -> new Chars(folded(parseEscape()));
+            case '^', '$', '*', '+', '?', '{', ')' -> throw new UnsupportedPattern();
+            default -> new Chars(folded(single(requireBasic(c))));
+        };
+    }
+
+    private Term parseQuantifier(Term term) {
+        if (position == pattern.length()) {
+            return term;
+        }
+        int min;
+        int max;
+        switch (pattern.charAt(position)) {
+            case '?' -> {
+                min = 0;
+                max = 1;
+            }
+            case '*' -> {
+                min = 0;
+                max = REPEAT_UNBOUNDED;
+            }
+            case '+' -> {
+                min = 1;
+                max = REPEAT_UNBOUNDED;
+            }
+            case '{' -> {
+                int close = pattern.indexOf('}', position);
+                if (close < 0) {
+                    throw new UnsupportedPattern();
+                }
+                String[] bounds = pattern.substring(position + 1, close).split(",", -1);
+                if (bounds.length > 2) {
+                    throw new UnsupportedPattern();
+                }
+                min = parseCount(bounds[0]);
+                max = bounds.length == 1 ? min : bounds[1].isEmpty() ? REPEAT_UNBOUNDED : parseCount(bounds[1]);
+                if (max != REPEAT_UNBOUNDED && max < min) {
+                    throw new UnsupportedPattern();
+                }
+                position = close;
+            }
+            default -> {
+                return term;
+            }
+        }
+        ++position;
+        boolean greedy = true;
+        if (position < pattern.length()) {
+            char next = pattern.charAt(position);
+            if (next == '?') {
+                greedy = false;
+                ++position;
+            } else if (next == '+') {
+                throw new UnsupportedPattern();
+            }
+        }
+        if (position < pattern.length() && "?*+{".indexOf(pattern.charAt(position)) >= 0) {
+            throw new UnsupportedPattern();
+        }
+        // The backtracking engine ends a repetition after an iteration that matched nothing, even if the iteration
+        // only preferred the empty match. The program can't tell such an iteration apart.
+        if (max != 1 && matchesEmpty(term)) {
+            throw new UnsupportedPattern();
+        }
+        return new Repetition(term, min, max, greedy);
+    }
+
+    private static boolean matchesEmpty(Term term) {
+        return switch (term) {
+            case Chars _ -> false;
+            case Concatenation(var terms) -> terms.stream().allMatch(RegexCompiler::matchesEmpty);
+            case Alternation(var alternatives) -> alternatives.stream().anyMatch(RegexCompiler::matchesEmpty);
+            case Repetition(var repeated, var min, _, _) -> min == 0 || matchesEmpty(repeated);
+        };
+    }
+
+    private static int parseCount(String count) {
+        if (count.isEmpty() || count.length() > 4 || !count.chars().allMatch(Character::isDigit)) {
+            throw new UnsupportedPattern();
+        }
+        return Integer.parseInt(count);
+    }
+
+    private Chars parseClass() {
+        boolean negated = pattern.startsWith("^", position);
+        if (negated) {
+            ++position;
+        }
+        if (pattern.startsWith("]", position)) {
+            throw new UnsupportedPattern();
+        }
+        int[] members = new int[0];
+        while (!pattern.startsWith("]", position)) {
+            if (position == pattern.length() || pattern.startsWith("[", position) || pattern.startsWith("&&", position)) {
+                throw new UnsupportedPattern();
+            }
+            int[] first = parseClassCharacter();
+            if (pattern.startsWith("-", position) && !pattern.startsWith("-]", position)) {
+                ++position;
+                int[] last = parseClassCharacter();
+                if (first.length != 2 || first[0] != first[1] || last.length != 2 || last[0] != last[1]
+                        || first[0] > last[0]) {
+                    throw new UnsupportedPattern();
+                }
+                first = range((char) first[0], (char) last[0]);
+            }
+            members = union(members, first);
+        }
+        ++position;
+        members = folded(members);
+        return new Chars(negated ? complement(members) : members);
+    }
+
+    private int[] parseClassCharacter() {
+        if (position == pattern.length()) {
+            throw new UnsupportedPattern();
+        }
+        char c = pattern.charAt(position++);
+        return c == '\\' ? parseEscape() : single(requireBasic(c));
+    }
+
+    private int[] parseEscape() {
+        if (position == pattern.length()) {
+            throw new UnsupportedPattern();
+        }
+        char c = pattern.charAt(position++);
+        return switch (c) {
+            case 'd' -> digits();
+            case 'D' -> complement(digits());
+            case 'w' -> word();
+            case 'W' -> complement(word());
+            case 's' -> space();
+            case 'S' -> complement(space());
+            case 't' -> single('\t');
+            case 'n' -> single('\n');
+            case 'r' -> single('\r');
+            case 'f' -> single('\f');
+            case 'a' -> single('\u0007');
+            case 'e' -> single('\u001B');
+            default -> {
+                if (Character.isLetterOrDigit(c)) {
+                    throw new UnsupportedPattern();
+                }
+                yield single(requireBasic(c));
+            }
+        };
+    }
+
+    private void expect(char c) {
+        if (position == pattern.length() || pattern.charAt(position) != c) {
+            throw new UnsupportedPattern();
+        }
+        ++position;
+    }
+
+    private static char requireBasic(char c) {
+        if (Character.isSurrogate(c)) {
+            throw new UnsupportedPattern();
+        }
+        return c;
+    }
+
+    // --- Character sets as sorted ranges ---
+
+    private static int[] single(char c) {
+        return range(c, c);
+    }
+
+    private static int[] range(char first, char last) {
+        return new int[]{first, last};
+    }
+
+    private static int[] digits() {
+        return range('0', '9');
+    }
+
+    /**
+     * @return all characters except the line terminators, which {@code .} doesn't match
+     */
+    private static int[] lineTerminatorsComplement() {
+        return complement(union(
+                union(single('\n'), single('\r')),
+                union(single('\u0085'), range('\u2028', '\u2029'))
+        ));
+    }
+
+    private static int[] word() {
+        return union(union(digits(), range('A', 'Z')), union(range('a', 'z'), single('_')));
+    }
+
+    private static int[] space() {
+        return union(range('\t', '\r'), single(' '));
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] all = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, all, a.length, b.length);
+        Integer[] order = new Integer[all.length / 2];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (x, y) -> Integer.compare(all[2 * x], all[2 * y]));
+        int[] merged = new int[all.length];
+        int size = 0;
+        for (int i : order) {
+            int first = all[2 * i];
+            int last = all[2 * i + 1];
+            if (size > 0 && first <= merged[size - 1] + 1) {
+                merged[size - 1] = Math.max(merged[size - 1], last);
+            } else {
+                merged[size++] = first;
+                merged[size++] = last;
+            }
+        }
+        return Arrays.copyOf(merged, size);
+    }
+
+    private static int[] complement(int[] ranges) {
+        int[] complement = new int[ranges.length + 2];
+        int size = 0;
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                complement[size++] = next;
+                complement[size++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= LAST_CHAR) {
+            complement[size++] = next;
+            complement[size++] = LAST_CHAR;
+        }
+        return Arrays.copyOf(complement, size);
+    }
+
+    /**
+     * Adds the other case of all US-ASCII letters, like {@link java.util.regex.Pattern#CASE_INSENSITIVE} does.
+     */
+    private int[] folded(int[] ranges) {
+        if (caseSensitive) {
+            return ranges;
+        }
+        int[] folded = ranges;
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int c = ranges[i]; c <= ranges[i + 1] && c < 128; ++c) {
+                if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
+                    folded = union(folded, single((char) (c ^ 0x20)));
+                }
+            }
+        }
+        return folded;
+    }
+
+    private static boolean contains(int[] ranges, int c) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (c >= ranges[i] && c <= ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // --- NFA program ---
+
+    private int emit(int operation, int argument, int next) {
+        if (instructions == MAX_INSTRUCTIONS) {
+            throw new UnsupportedPattern();
+        }
+        if (instructions == operations.length) {
+            operations = Arrays.copyOf(operations, instructions * 2);
+            arguments = Arrays.copyOf(arguments, instructions * 2);
+            nexts = Arrays.copyOf(nexts, instructions * 2);
+        }
+        operations[instructions] = operation;
+        arguments[instructions] = argument;
+        nexts[instructions] = next;
+        return instructions++;
+    }
+
+    /**
+     * Emits the instructions of a term, continuing with {@code next} after it.
+     *
+     * @return the first instruction of the term
+     */
+    private int emit(Term term, int next) {
+        return switch (term) {
+            case Chars(var ranges) -> {
+                sets.add(ranges);
+                yield emit(CHARS, sets.size() - 1, next);
+            }
+            case Concatenation(var terms) -> {
+                int start = next;
+                for (Term element : terms.reversed()) {
+                    start = emit(element, start);
+                }
+                yield start;
+            }
+            case Alternation(var alternatives) -> {
+                int start = emit(alternatives.getLast(), next);
+                for (Term alternative : alternatives.reversed().subList(1, alternatives.size())) {
+                    start = emit(SPLIT, emit(alternative, next), start);
+                }
+                yield start;
+            }
+            case Repetition(var repeated, var min, var max, var greedy) -> {
+                int start = next;
+                if (max == REPEAT_UNBOUNDED) {
+                    int loop = emit(SPLIT, 0, 0);
+                    int body = emit(repeated, loop);
+                    arguments[loop] = greedy ? body : next;
+                    nexts[loop] = greedy ? next : body;
+                    start = loop;
+                } else {
+                    for (int i = min; i < max; ++i) {
+                        int body = emit(repeated, start);
+                        start = greedy ? emit(SPLIT, body, start) : emit(SPLIT, start, body);
+                    }
+                }
+                for (int i = 0; i < min; ++i) {
+                    start = emit(repeated, start);
+                }
+                yield start;
+            }
+        };
+    }
+
+    // --- DFA construction ---
+
+    /**
+     * Subset construction over the priority ordered thread lists. The characters are partitioned into classes, in
+     * which every character belongs to the same sets.
+     */
+    private TerminalMatcher.Dfa determinize(int start) {
+        char[] classStarts = classStarts();
+        int classes = classStarts.length;
+        boolean[][] memberships = new boolean[sets.size()][classes];
+        for (int set = 0; set < sets.size(); ++set) {
+            for (int c = 0; c < classes; ++c) {
+                memberships[set][c] = contains(sets.get(set), classStarts[c]);
+            }
+        }
+        Map<List<Integer>, Integer> stateIds = new HashMap<>();
+        List<List<Integer>> states = new ArrayList<>();
+        boolean[] seen = new boolean[instructions];
+        List<Integer> initial = new ArrayList<>();
+        addThread(start, initial, seen);
+        stateIds.put(initial, 0);
+        states.add(initial);
+        int[] transitions = new int[0];
+        for (int state = 0; state < states.size(); ++state) {
+            transitions = Arrays.copyOf(transitions, (state + 1) * classes);
+            List<Integer> threads = states.get(state);
+            for (int c = 0; c < classes; ++c) {
+                Arrays.fill(seen, false);
+                List<Integer> next = new ArrayList<>();
+                for (int thread : threads) {
+                    if (operations[thread] == CHARS && memberships[arguments[thread]][c]) {
+                        addThread(nexts[thread], next, seen);
+                    }
+                }
+                if (next.isEmpty()) {
+                    transitions[state * classes + c] = TerminalMatcher.Dfa.DEAD;
+                    continue;
+                }
+                Integer target = stateIds.get(next);
+                if (target == null) {
+                    if (states.size() == MAX_STATES) {
+                        throw new UnsupportedPattern();
+                    }
+                    target = states.size();
+                    stateIds.put(next, target);
+                    states.add(next);
+                }
+                transitions[state * classes + c] = target;
+            }
+        }
+        boolean[] accepting = new boolean[states.size()];
+        for (int state = 0; state < accepting.length; ++state) {
+            List<Integer> threads = states.get(state);
+            accepting[state] = !threads.isEmpty() && operations[threads.getLast()] == MATCH;
+        }
+        return new TerminalMatcher.Dfa(pattern, classStarts, transitions, accepting);
+    }
+
+    /**
+     * Follows the splits of a thread in order of priority. Threads added after a match are dropped.
+     */
+    private void addThread(int instruction, List<Integer> threads, boolean[] seen) {
+        if (seen[instruction] || !threads.isEmpty() && operations[threads.getLast()] == MATCH) {
+            return;
+        }
+        seen[instruction] = true;
+        if (operations[instruction] == SPLIT) {
+            addThread(arguments[instruction], threads, seen);
+            addThread(nexts[instruction], threads, seen);
+        } else {
+            threads.add(instruction);
+        }
+    }
+
+    /**
+     * @return the first character of every class, sorted and starting with {@code 0}
+     */
+    private char[] classStarts() {
+        TreeSet<Integer> starts = new TreeSet<>(List.of(0));
+        for (int[] ranges : sets) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                starts.add(ranges[i]);
+                if (ranges[i + 1] < LAST_CHAR) {
+                    starts.add(ranges[i + 1] + 1);
+                }
+            }
+        }
+        char[] classStarts = new char[starts.size()];
+        int i = 0;
+        for (int start : starts) {
+            classStarts[i++] = (char) start;
+        }
+        return classStarts;
+    }
+}
@@ -0,0 +1,311 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+
+import static de.friendlyhedgehog.jetpack.parse.ParsingStateLookup.*;
+
+/**
+ * Application of a rule of the grammar. This node is capable of evaluating left recursive parsing expression
+ * grammars (PEG).
+ * It follows the proposed method of
+ * <a href="https://www.jstage.jst.go.jp/article/ipsjjip/29/0/29_174/_pdf"> Umeda and Maeda Paper "Packrat Parsers Can Support Multiple Left-recursive
+ * Calls at the Same Position"</a>
+ * <p>
+ * Memo entries which were stored while only recognizing (e.g. inside a predicate) carry no parse tree. If such an entry
+ * is hit while a tree is built, the rule is evaluated again.
+ */
+final class RuleNode implements ParserNode {
+
+    /**
+     * Returned by {@link #enter} if the body has to be evaluated.
+     */
+    static final int EVALUATE = -2;
+    /**
+     * Returned by {@link #exitSeed} if the seed has to be grown.
+     */
+    static final int GROW = -3;
+
+    private final int id;
+    private final Symbol.NonTerminal nonTerminal;
+    /**
+     * Marks rules which are not left recursive.
+     */
+    static final int NO_COMPONENT = -1;
+
+    private ParserNode body;
+    /**
+     * Left recursive component of the rule. Rules which are not left recursive are not seeded, and rules only take
+     * part in growing the seed of rules of their own component.
+     */
+    private int component = NO_COMPONENT;
+    private Memoization memoization = Memoization.ALWAYS;
+
+    RuleNode(int id, String name) {
+        this.id = id;
+        this.nonTerminal = Symbol.nonTerminal(name);
+    }
+
+    /**
+     * @param memoization ignored for left recursive rules, which are always memoized
+     */
+    void link(ParserNode body, int component, Memoization memoization) {
+        this.body = body;
+        this.component = component;
+        this.memoization = component == NO_COMPONENT ? memoization : Memoization.ALWAYS;
+    }
+
+    /**
+     * @return whether this application is answered from and stored in the memo table
+     */
+    boolean memoizes(ParsingState parsingState) {
+        return switch (memoization) {
+            case ALWAYS -> true;
+            case NEVER -> false;
+            case ADAPTIVE -> parsingState.getAdaptiveMemoization().memoizes(id);
+        };
+    }
+
+    int id() {
+        return id;
+    }
+
+    String name() {
+        return nonTerminal.name();
+    }
+
+    Symbol.NonTerminal nonTerminal() {
+        return nonTerminal;
+    }
+
+    ParserNode body() {
+        return body;
+    }
+
+    Memoization memoization() {
+        return memoization;
+    }
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        if (!memoizes(parsingState)) {
+            int mark = mark(tree);
+            return exitUnmemoized(position, body.parse(input, position, parsingState, tree), tree, mark);
+        }
+        ParsingState.Growing growing = parsingState.getGrowing();
+        if (growsRecursive(growing, position)) {
+            growing.involve(this);
+            int mark = mark(tree);
+            int end = body.parse(input, position, parsingState, tree);
+            return exitGrowRecursive(parsingState, position, end, tree, mark);
+        }
+        parsingState.setGrowing(null);
+        enterApplication(parsingState);
+        try {
+            int result = enter(parsingState, position, tree);
+            if (result != EVALUATE) {
+                return result;
+            }
+            int mark = mark(tree);
+            result = exitSeed(parsingState, position, body.parse(input, position, parsingState, tree), tree, mark);
+            if (result != GROW) {
+                return result;
+            }
+            int answer = FAIL;
+            while (true) {
+                enterGrowLr(parsingState, position);
+                mark = mark(tree);
+                int end = body.parse(input, position, parsingState, tree);
+                int grown = exitGrowLr(parsingState, position, end, tree, mark, answer);
+                if (grown == FAIL) {
+                    return finishGrowLr(parsingState, position, tree, answer);
+                }
+                answer = grown;
+            }
+        } finally {
+            exitApplication(parsingState);
+            parsingState.setGrowing(growing);
+        }
+    }
+
+    /*
+     * The steps below are shared by parse and the IterativeEngine. Each step ends where the body has to be evaluated,
+     * the next one takes the result of the body.
+     */
+
+    /**
+     * Left recursive rules read their memo entry at the start position after evaluating their body, so they are
+     * backtrack points while they are applied.
+     */
+    void enterApplication(ParsingState parsingState) {
+        if (component != NO_COMPONENT) {
+            parsingState.enterBacktrackPoint();
+        }
+    }
+
+    void exitApplication(ParsingState parsingState) {
+        if (component != NO_COMPONENT) {
+            parsingState.exitBacktrackPoint();
+        }
+    }
+
+    /**
+     * Unmemoized rules are not left recursive, they only wrap the result of their body.
+     */
+    int exitUnmemoized(int position, int end, TreeBuffer tree, int mark) {
+        if (end != FAIL && tree != null) {
+            tree.wrap(mark, this, position, end);
+        }
+        return end;
+    }
+
+    /**
+     * A rule outside the component of the growing rule can't reach it without consuming input, so its memoized result
+     * does not depend on the seed.
+     *
+     * @return whether this rule takes part in growing the left recursion of another rule at the position
+     */
+    boolean growsRecursive(ParsingState.Growing growing, int position) {
+        return growing != null
+                && component == growing.component()
+                && position == growing.position()
+                && !growing.isInvolved(this);
+    }
+
+    int exitGrowRecursive(ParsingState parsingState, int position, int end, TreeBuffer tree, int mark) {
+        final MemoStore memoTable = parsingState.getLookup();
+        int previous = memoTable.get(id, position);
+        int previousTree = tree == null ? ABSENT : memoTable.getParseTree(id, position);
+        int previousPosition = isMatch(previous) ? previous : position;
+        boolean previousWithoutTree = tree != null && previousTree == ABSENT;
+        if (end != FAIL && (end > previousPosition || previousWithoutTree && end == previous)) {
+            return memoize(position, end, parsingState, tree, mark);
+        }
+        if (tree != null) {
+            tree.truncate(mark);
+        }
+        if (!isMatch(previous) || previousWithoutTree) {
+            return FAIL;
+        }
+        if (tree != null) {
+            tree.add(previousTree);
+        }
+        return previous;
+    }
+
+    /**
+     * Answers the application from the memo table if possible.
+     *
+     * @return the result or {@link #EVALUATE} if the body has to be evaluated
+     */
+    int enter(ParsingState parsingState, int position, TreeBuffer tree) {
+        final MemoStore memoTable = parsingState.getLookup();
+        final int entry = memoTable.get(id, position);
+        if (entry == ABSENT || isMatch(entry) && tree != null && memoTable.getParseTree(id, position) == ABSENT) {
+            if (component != NO_COMPONENT) {
+                memoTable.insert(id, position, SEED);
+                parsingState.enterSeed(id, position);
+            }
+            return EVALUATE;
+        }
+        if (entry == SEED) {
+            parsingState.hitSeed(id, position);
+            memoTable.insert(id, position, LEFT_RECURSION);
+            return FAIL;
+        }
+        if (memoization == Memoization.ADAPTIVE) {
+            parsingState.getAdaptiveMemoization().hit(id);
+        }
+        if (!isMatch(entry)) {
+            return FAIL;
+        }
+        if (tree != null) {
+            tree.add(memoTable.getParseTree(id, position));
+        }
+        return entry;
+    }
+
+    /**
+     * Memoizes the seed.
+     *
+     * @return the result or {@link #GROW} if the rule turned out to be left recursive
+     */
+    int exitSeed(ParsingState parsingState, int position, int end, TreeBuffer tree, int mark) {
+        boolean growLr = component != NO_COMPONENT && parsingState.exitSeed();
+        end = memoize(position, end, parsingState, tree, mark);
+        if (!growLr) {
+            return end;
+        }
+        if (tree != null) {
+            tree.truncate(mark);
+        }
+        parsingState.enterGrowing();
+        return GROW;
+    }
+
+    void enterGrowLr(ParsingState parsingState, int position) {
+        parsingState.growIteration(this, position, component);
+    }
+
+    /**
+     * One iteration of growing the seed.
+     *
+     * @param answer result of the previous iteration, {@link #FAIL} in the first one
+     * @return the result if it grew, {@link #FAIL} if growing has ended
+     */
+    int exitGrowLr(ParsingState parsingState, int position, int end, TreeBuffer tree, int mark, int answer) {
+        parsingState.setGrowing(null);
+        int oldPosition = answer == FAIL ? position : answer;
+        if (end == FAIL || end <= oldPosition) {
+            if (tree != null) {
+                tree.truncate(mark);
+            }
+            return FAIL;
+        }
+        int answerTree = ABSENT;
+        if (tree != null) {
+            answerTree = tree.wrapMemoized(mark, this, position, end);
+            tree.truncate(mark);
+        }
+        parsingState.getLookup().insert(id, position, end, answerTree);
+        return end;
+    }
+
+    int finishGrowLr(ParsingState parsingState, int position, TreeBuffer tree, int answer) {
+        parsingState.exitGrowing();
+        final MemoStore memoTable = parsingState.getLookup();
+        if (answer == FAIL) {
+            memoTable.insert(id, position, MISMATCH);
+        } else if (tree != null) {
+            tree.add(memoTable.getParseTree(id, position));
+        }
+        return answer;
+    }
+
+    /**
+     * Stores the result of the body in the memo table. On a match the parse tree appended since {@code mark} is
+     * wrapped into the node of this rule.
+     */
+    private int memoize(int position, int end, ParsingState parsingState, TreeBuffer tree, int mark) {
+        final MemoStore memoTable = parsingState.getLookup();
+        if (memoization == Memoization.ADAPTIVE) {
+            parsingState.getAdaptiveMemoization().stored(id);
+        }
+        if (end == FAIL) {
+            memoTable.insert(id, position, MISMATCH);
+        } else if (tree == null) {
+            memoTable.insert(id, position, end);
+        } else {
+            memoTable.insert(id, position, end, tree.wrapMemoized(mark, this, position, end));
+        }
+        return end;
+    }
+
+    static int mark(TreeBuffer tree) {
+        return tree == null ? 0 : tree.size();
+    }
+
+    @Override
+    public String toString() {
+        return "RuleNode[" + name() + "]";
+    }
+}
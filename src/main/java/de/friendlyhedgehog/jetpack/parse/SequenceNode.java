@@ -0,0 +1,24 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * All elements of a chain of {@link de.friendlyhedgehog.jetpack.grammar.Operator.Sequence}s, applied one after the
+ * other in a loop.
+ */
+record SequenceNode(ParserNode[] elements) implements ParserNode {
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        int mark = RuleNode.mark(tree);
+        int end = position;
+        for (ParserNode element : elements) {
+            end = element.parse(input, end, parsingState, tree);
+            if (end == FAIL) {
+                if (tree != null) {
+                    tree.truncate(mark);
+                }
+                return FAIL;
+            }
+        }
+        return end;
+    }
+}
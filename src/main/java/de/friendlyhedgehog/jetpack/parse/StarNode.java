@@ -0,0 +1,27 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+record StarNode(ParserNode body) implements ParserNode {
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        return repeat(body, input, position, parsingState, tree);
+    }
+
+    /**
+     * Applies the body as often as possible, starting at the given position. The parse can't return before the end of
+     * an iteration, unless an enclosing node is a backtrack point, see {@link ParsingState#commit(int)}.
+     */
+    static int repeat(ParserNode body, Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        int lastPosition = position;
+        while (true) {
+            parsingState.enterBacktrackPoint();
+            int end = body.parse(input, lastPosition, parsingState, tree);
+            parsingState.exitBacktrackPoint();
+            if (end == FAIL) {
+                return lastPosition;
+            }
+            lastPosition = end;
+            parsingState.commit(lastPosition);
+        }
+    }
+}
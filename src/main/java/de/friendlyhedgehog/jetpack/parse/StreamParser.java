@@ -0,0 +1,154 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.datatypes.Either;
+import de.friendlyhedgehog.jetpack.datatypes.Node;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Parses a grammar whose starting rule is a repetition from a stream, without holding the whole input.
+ * <p>
+ * The input is read into a window. Only whole tokens are parsed, so the window is cut after its last whitespace. The
+ * elements of the repetition are parsed one after the other. An element whose parse checked for the end of the
+ * window (see {@link Input#atEnd(int)}) could turn out differently with more input, so it is parsed again once more
+ * input was read. Any other element is complete: its trees are emitted and its text is dropped from the window. The
+ * memo table only lives for one pass over the window.
+ */
+final class StreamParser {
+
+    static final int CHUNK_SIZE = 1 << 16;
+
+    private final CompiledGrammar grammar;
+    private final ParserNode element;
+    private final ParseOptions options;
+    private final Consumer<Node<Symbol>> consumer;
+    private final StringBuilder window = new StringBuilder();
+    private final char[] buffer = new char[CHUNK_SIZE];
+    /**
+     * Number of characters, without whitespace, which were parsed and dropped from the window.
+     */
+    private long consumed;
+    private int emitted;
+    private int elements;
+    private boolean endOfStream;
+
+    private StreamParser(
+            CompiledGrammar grammar,
+            ParserNode element,
+            ParseOptions options,
+            Consumer<Node<Symbol>> consumer
+    ) {
+        this.grammar = grammar;
+        this.element = element;
+        this.options = options;
+        this.consumer = consumer;
+    }
+
+    /**
+     * @param consumer receives the trees of every element of the repetition as soon as the element is complete
+     * @return the number of emitted trees
+     */
+    static Either<Integer, String> parse(
+            CompiledGrammar grammar,
+            String startingRule,
+            Reader reader,
+            ParseOptions options,
+            Consumer<Node<Symbol>> consumer
+    ) {
+        if (grammar.hasLayout()) {
+            return Either.or("Streaming needs the input to be split into tokens, the grammar has a layout");
+        }
+        return grammar.repeatedElement()
+                .map(element -> new StreamParser(grammar, element, options, consumer).parse(reader, startingRule))
+                .orElseGet(() -> Either.or("Starting rule " + startingRule + " is no repetition"));
+    }
+
+    private Either<Integer, String> parse(Reader reader, String startingRule) {
+        while (true) {
+            read(reader);
+            int complete = endOfStream ? window.length() : lastSeparator() + 1;
+            Either<Input, String> lexed = grammar.input(CharBuffer.wrap(window, 0, complete));
+            if (lexed instanceof Either.Or<Input, String>(var error)) {
+                return Either.or(error);
+            }
+            Input input = lexed.getEither();
+            int position = parseElements(input);
+            if (!endOfStream && (position == input.length() || input.endReached())) {
+                consumed += position;
+                window.delete(0, input.sourceOffset(position));
+                continue;
+            }
+            if (position < input.length()) {
+                return Either.or("Could only match " + (consumed + position) + " " + input.unit());
+            }
+            if (elements == 0 && grammar.requiresElement()) {
+                return Either.or("Could not match rule " + startingRule);
+            }
+            return Either.ofThis(emitted);
+        }
+    }
+
+    /**
+     * Emits the complete elements at the beginning of the input.
+     *
+     * @return the position after the last complete element
+     */
+    private int parseElements(Input input) {
+        int position = 0;
+        try (ParsingState parsingState = grammar.state(options, input)) {
+            NodeTreeBuffer tree = new NodeTreeBuffer();
+            parsingState.buildTree(tree);
+            while (position < input.length()) {
+                int end = switch (options.engine()) {
+                    case RECURSIVE -> element.parse(input, position, parsingState, tree);
+                    case ITERATIVE -> IterativeEngine.parse(element, input, position, parsingState, tree);
+                };
+                if (end == ParserNode.FAIL || end == position || (input.endReached() && !endOfStream)) {
+                    break;
+                }
+                tree.nodes().forEach(consumer);
+                emitted += tree.nodes().size();
+                tree.truncate(0);
+                ++elements;
+                position = end;
+                parsingState.commit(position);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Reads at least as much as the window holds, so an element spanning many reads is only parsed a logarithmic
+     * number of times.
+     */
+    private void read(Reader reader) {
+        int wanted = Math.max(CHUNK_SIZE, window.length());
+        try {
+            for (int total = 0; total < wanted; ) {
+                int read = reader.read(buffer);
+                if (read == -1) {
+                    endOfStream = true;
+                    return;
+                }
+                window.append(buffer, 0, read);
+                total += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int lastSeparator() {
+        for (int i = window.length() - 1; i >= 0; --i) {
+            if (Input.isWhitespace(window.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,83 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the outcome of matching a terminal at a position, so alternatives of a choice sharing a leading terminal
+ * and rules evaluated again after backtracking don't match it again. Terminals are identified by the dense ids of
+ * their {@link TerminalNode}s.
+ * <p>
+ * The cache is direct-mapped: every position has a slot, a position evicts the one it shares its slot with. So the
+ * cache stays small however long the input is, while backtracking mostly revisits recent positions. A slot holds a bit
+ * set of the terminals with a known outcome, a bit set of those that failed and the ends of those that matched.
+ * Evicting a position only clears its bit sets.
+ */
+final class TerminalCache {
+
+    /**
+     * Returned by {@link #get} if the outcome is not known.
+     */
+    static final int UNKNOWN = -2;
+
+    private static final int MAX_SLOTS = 1024;
+
+    private final int terminalCount;
+    private final int words;
+    private final int mask;
+    private final int[] positions;
+    private final long[] known;
+    private final long[] failures;
+    private final int[] ends;
+
+    /**
+     * @param length of the input, shorter inputs need fewer slots
+     */
+    TerminalCache(int terminalCount, int length) {
+        int slots = Math.min(MAX_SLOTS, Integer.highestOneBit(Math.max(1, length)) << 1);
+        this.terminalCount = terminalCount;
+        this.words = (terminalCount + Long.SIZE - 1) / Long.SIZE;
+        this.mask = slots - 1;
+        this.positions = new int[slots];
+        this.known = new long[slots * words];
+        this.failures = new long[slots * words];
+        this.ends = new int[slots * terminalCount];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * @return the end of the match, {@link ParserNode#FAIL} or {@link #UNKNOWN}
+     */
+    int get(int terminal, int position) {
+        int slot = position & mask;
+        if (positions[slot] != position) {
+            return UNKNOWN;
+        }
+        int word = slot * words + terminal / Long.SIZE;
+        long bit = 1L << terminal;
+        if ((known[word] & bit) == 0) {
+            return UNKNOWN;
+        }
+        return (failures[word] & bit) != 0 ? ParserNode.FAIL : ends[slot * terminalCount + terminal];
+    }
+
+    /**
+     * @param end the end of the match or {@link ParserNode#FAIL}
+     */
+    void put(int terminal, int position, int end) {
+        int slot = position & mask;
+        int first = slot * words;
+        if (positions[slot] != position) {
+            positions[slot] = position;
+            Arrays.fill(known, first, first + words, 0);
+            Arrays.fill(failures, first, first + words, 0);
+        }
+        int word = first + terminal / Long.SIZE;
+        long bit = 1L << terminal;
+        known[word] |= bit;
+        if (end == ParserNode.FAIL) {
+            failures[word] |= bit;
+        } else {
+            ends[slot * terminalCount + terminal] = end;
+        }
+    }
+}
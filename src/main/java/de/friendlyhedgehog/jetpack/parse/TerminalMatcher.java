@@ -0,0 +1,415 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.grammar.Expression;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Matches a single terminal at a position of a text. A matcher is created once per terminal of a grammar, so matching
+ * does neither compile patterns nor copy the text.
+ */
+sealed interface TerminalMatcher {
+
+    int NO_MATCH = -1;
+
+    /**
+     * Matches the terminal against the region {@code [from, to)} of the text. The match has to start at {@code from}.
+     *
+     * @return the end of the match or {@link #NO_MATCH}
+     */
+    int match(CharSequence text, int from, int to);
+
+    /**
+     * @return textual representation of the terminal for error messages
+     */
+    String pattern();
+
+    static TerminalMatcher of(Symbol.Terminal terminal) {
+        Optional<String> literal = literal(terminal.symbol());
+        if (literal.isPresent()) {
+            return new Literal(literal.get(), terminal.caseSensitive());
+        }
+        Optional<List<String>> literals = literalAlternatives(terminal.symbol());
+        if (literals.isPresent()) {
+            return Trie.of(literals.get(), terminal.caseSensitive(), terminal.symbol());
+        }
+        return RegexCompiler.compile(terminal.symbol(), terminal.caseSensitive())
+                .<TerminalMatcher>map(dfa -> dfa)
+                .orElseGet(() -> new Regex(Pattern.compile(
+                        terminal.symbol(),
+                        terminal.caseSensitive() ? 0 : Pattern.CASE_INSENSITIVE
+                )));
+    }
+
+    /**
+     * Merges an ordered choice of literal terminals into a single terminal, which matches the same text and is
+     * matched by a {@link Trie}.
+     *
+     * @return the merged terminal, if all alternatives are non-empty literals with the same case sensitivity
+     */
+    static Optional<Symbol.Terminal> literalChoice(List<? extends Expression> alternatives) {
+        List<String> literals = new ArrayList<>();
+        for (Expression alternative : alternatives) {
+            if (!(alternative instanceof Symbol.Terminal(var symbol, var caseSensitive))
+                    || caseSensitive != ((Symbol.Terminal) alternatives.getFirst()).caseSensitive()) {
+                return Optional.empty();
+            }
+            Optional<String> literal = literal(symbol).filter(text -> !text.isEmpty() && !text.contains("\\E"));
+            if (literal.isEmpty()) {
+                return Optional.empty();
+            }
+            literals.add(literal.get());
+        }
+        if (literals.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new Symbol.Terminal(
+                alternatives(literals),
+                ((Symbol.Terminal) alternatives.getFirst()).caseSensitive()
+        ));
+    }
+
+    /**
+     * Terminals created by {@link de.friendlyhedgehog.jetpack.grammar.Expression#terminalLiteral(String)} are quoted
+     * with {@code \Q...\E}, but also patterns without any meta characters only match themselves.
+     *
+     * @return the text the pattern matches, if it matches only exactly one text
+     */
+    static Optional<String> literal(String pattern) {
+        if (pattern.startsWith("\\Q") && pattern.endsWith("\\E")) {
+            String quoted = pattern.substring(2, pattern.length() - 2);
+            return quoted.contains("\\E") ? Optional.empty() : Optional.of(quoted);
+        }
+        for (int i = 0; i < pattern.length(); ++i) {
+            if ("\\^$.|?*+()[]{}".indexOf(pattern.charAt(i)) >= 0) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(pattern);
+    }
+
+    /**
+     * Recognizes patterns created by {@link #alternatives(List)}.
+     *
+     * @return the quoted literals in order, if the pattern is an alternation of quoted literals
+     */
+    static Optional<List<String>> literalAlternatives(String pattern) {
+        List<String> literals = new ArrayList<>();
+        int start = 0;
+        while (pattern.startsWith("\\Q", start)) {
+            int end = pattern.indexOf("\\E", start + 2);
+            if (end < 0) {
+                return Optional.empty();
+            }
+            literals.add(pattern.substring(start + 2, end));
+            start = end + 2;
+            if (start == pattern.length()) {
+                return Optional.of(literals);
+            }
+            if (pattern.charAt(start) != '|') {
+                return Optional.empty();
+            }
+            ++start;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @param literals texts without {@code \E}
+     * @return a pattern matching the first of the literals that matches, like an ordered choice of them
+     */
+    static String alternatives(List<String> literals) {
+        return literals.stream()
+                .map(literal -> "\\Q" + literal + "\\E")
+                .collect(Collectors.joining("|"));
+    }
+
+    /**
+     * Compares the text character by character. Ignoring the case follows {@link Pattern#CASE_INSENSITIVE}, which only
+     * folds US-ASCII letters.
+     */
+    record Literal(String literal, boolean caseSensitive) implements TerminalMatcher {
+
+        @Override
+        public int match(CharSequence text, int from, int to) {
+            int end = from + literal.length();
+            if (end > to) {
+                return NO_MATCH;
+            }
+            for (int i = 0; i < literal.length(); ++i) {
+                char actual = text.charAt(from + i);
+                char expected = literal.charAt(i);
+                if (actual != expected && (caseSensitive || toLowerCase(actual) != toLowerCase(expected))) {
+                    return NO_MATCH;
+                }
+            }
+            return end;
+        }
+
+        @Override
+        public String pattern() {
+            return literal;
+        }
+
+        private static char toLowerCase(char c) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+    }
+
+    /**
+     * Matches an ordered choice of literals in one pass over the text. Every literal is a path from the root of the
+     * trie, the states store the index of the literal ending there. All literals matching at a position lie on the
+     * path of the text, so the literal with the lowest index on that path is the one an ordered choice would match.
+     * The transitions are stored in one array per kind, the edges of a state are sorted by label.
+     */
+    static final class Trie implements TerminalMatcher {
+
+        private static final int NONE = Integer.MAX_VALUE;
+
+        private final String pattern;
+        private final boolean caseSensitive;
+        /**
+         * Edges of state {@code s} are at {@code [firstEdge[s], firstEdge[s + 1])}.
+         */
+        private final int[] firstEdge;
+        private final char[] labels;
+        private final int[] targets;
+        /**
+         * Index of the literal ending in a state or {@link #NONE}.
+         */
+        private final int[] accepting;
+        /**
+         * Lowest index of a literal ending in a state or below it. Once a match with a lower index is found, the
+         * search stops.
+         */
+        private final int[] lowestBelow;
+
+        private Trie(String pattern, boolean caseSensitive, int[] firstEdge, char[] labels, int[] targets,
+                     int[] accepting, int[] lowestBelow) {
+            this.pattern = pattern;
+            this.caseSensitive = caseSensitive;
+            this.firstEdge = firstEdge;
+            this.labels = labels;
+            this.targets = targets;
+            this.accepting = accepting;
+            this.lowestBelow = lowestBelow;
+        }
+
+        static Trie of(List<String> literals, boolean caseSensitive, String pattern) {
+            List<TreeMap<Character, Integer>> children = new ArrayList<>();
+            List<Integer> accepting = new ArrayList<>();
+            children.add(new TreeMap<>());
+            accepting.add(NONE);
+            for (int index = 0; index < literals.size(); ++index) {
+                int state = 0;
+                for (char c : literals.get(index).toCharArray()) {
+                    Integer next = children.get(state).get(fold(c, caseSensitive));
+                    if (next == null) {
+                        next = children.size();
+                        children.get(state).put(fold(c, caseSensitive), next);
+                        children.add(new TreeMap<>());
+                        accepting.add(NONE);
+                    }
+                    state = next;
+                }
+                accepting.set(state, Math.min(accepting.get(state), index));
+            }
+            int states = children.size();
+            int[] firstEdge = new int[states + 1];
+            char[] labels = new char[states - 1];
+            int[] targets = new int[states - 1];
+            int edge = 0;
+            for (int state = 0; state < states; ++state) {
+                firstEdge[state] = edge;
+                for (Map.Entry<Character, Integer> child : children.get(state).entrySet()) {
+                    labels[edge] = child.getKey();
+                    targets[edge] = child.getValue();
+                    ++edge;
+                }
+            }
+            firstEdge[states] = edge;
+            int[] lowestBelow = new int[states];
+            // children are created after their parents, so a backwards pass sees every child before its parent
+            for (int state = states - 1; state >= 0; --state) {
+                lowestBelow[state] = accepting.get(state);
+                for (int child : children.get(state).values()) {
+                    lowestBelow[state] = Math.min(lowestBelow[state], lowestBelow[child]);
+                }
+            }
+            return new Trie(pattern, caseSensitive, firstEdge, labels, targets,
+                    accepting.stream().mapToInt(Integer::intValue).toArray(), lowestBelow);
+        }
+
+        @Override
+        public int match(CharSequence text, int from, int to) {
+            int state = 0;
+            int best = accepting[0];
+            int end = best == NONE ? NO_MATCH : from;
+            for (int position = from; position < to && best > lowestBelow[state]; ++position) {
+                state = next(state, fold(text.charAt(position), caseSensitive));
+                if (state < 0) {
+                    break;
+                }
+                if (accepting[state] < best) {
+                    best = accepting[state];
+                    end = position + 1;
+                }
+            }
+            return end;
+        }
+
+        @Override
+        public String pattern() {
+            return pattern;
+        }
+
+        /**
+         * @return the characters a match can start with, as stored in the trie
+         */
+        CharSet first() {
+            if (accepting[0] != NONE) {
+                return CharSet.ANY;
+            }
+            CharSet first = CharSet.EMPTY;
+            for (int edge = firstEdge[0]; edge < firstEdge[1]; ++edge) {
+                first = first.union(CharSet.of(labels[edge]));
+            }
+            return first;
+        }
+
+        private int next(int state, char c) {
+            int low = firstEdge[state];
+            int high = firstEdge[state + 1] - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char label = labels[middle];
+                if (label < c) {
+                    low = middle + 1;
+                } else if (label > c) {
+                    high = middle - 1;
+                } else {
+                    return targets[middle];
+                }
+            }
+            return -1;
+        }
+
+        private static char fold(char c, boolean caseSensitive) {
+            return caseSensitive ? c : Literal.toLowerCase(c);
+        }
+    }
+
+    /**
+     * Table driven automaton built by the {@link RegexCompiler}. Matching neither allocates nor backtracks, it reads
+     * every character at most once.
+     */
+    static final class Dfa implements TerminalMatcher {
+
+        static final int DEAD = -1;
+
+        private final String pattern;
+        /**
+         * First character of every character class, sorted. All characters of a class have the same transitions.
+         */
+        private final char[] classStarts;
+        private final byte[] asciiClasses;
+        private final int classes;
+        /**
+         * Transition of state {@code s} for class {@code c} at {@code s * classes + c}, or {@link #DEAD}.
+         */
+        private final int[] transitions;
+        private final boolean[] accepting;
+
+        Dfa(String pattern, char[] classStarts, int[] transitions, boolean[] accepting) {
+            this.pattern = pattern;
+            this.classStarts = classStarts;
+            this.classes = classStarts.length;
+            this.transitions = transitions;
+            this.accepting = accepting;
+            this.asciiClasses = new byte[128];
+            int characterClass = 0;
+            for (char c = 0; c < 128; ++c) {
+                while (characterClass + 1 < classes && classStarts[characterClass + 1] <= c) {
+                    ++characterClass;
+                }
+                asciiClasses[c] = (byte) characterClass;
+            }
+        }
+
+        @Override
+        public int match(CharSequence text, int from, int to) {
+            int state = 0;
+            int end = accepting[0] ? from : NO_MATCH;
+            for (int position = from; position < to; ++position) {
+                state = transitions[state * classes + classOf(text.charAt(position))];
+                if (state == DEAD) {
+                    break;
+                }
+                if (accepting[state]) {
+                    end = position + 1;
+                }
+            }
+            return end;
+        }
+
+        @Override
+        public String pattern() {
+            return pattern;
+        }
+
+        /**
+         * @return the characters a match can start with
+         */
+        CharSet first() {
+            if (accepting[0]) {
+                return CharSet.ANY;
+            }
+            CharSet first = CharSet.EMPTY;
+            for (int c = 0; c < classes; ++c) {
+                if (transitions[c] != DEAD) {
+                    char last = c + 1 < classes ? (char) (classStarts[c + 1] - 1) : Character.MAX_VALUE;
+                    first = first.union(CharSet.range(classStarts[c], last));
+                }
+            }
+            return first;
+        }
+
+        int states() {
+            return accepting.length;
+        }
+
+        private int classOf(char c) {
+            if (c < 128) {
+                return asciiClasses[c];
+            }
+            int found = Arrays.binarySearch(classStarts, c);
+            return found >= 0 ? found : -found - 2;
+        }
+    }
+
+    /**
+     * Matches a precompiled pattern anchored at the start of the region, without searching the remaining text.
+     */
+    record Regex(Pattern compiled) implements TerminalMatcher {
+
+        @Override
+        public int match(CharSequence text, int from, int to) {
+            Matcher matcher = compiled.matcher(text).region(from, to);
+            return matcher.lookingAt() ? matcher.end() : NO_MATCH;
+        }
+
+        @Override
+        public String pattern() {
+            return compiled.pattern();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * @param id dense over the distinct terminals of a compiled grammar, the key of the {@link TerminalCache}
+ */
+record TerminalNode(int id, TerminalMatcher matcher) implements ParserNode {
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        int end = input.atEnd(position) ? FAIL : match(input, position, parsingState.getTerminalCache());
+        if (end == FAIL) {
+            if (tree != null) {
+                parsingState.fail(id, position);
+            }
+            return FAIL;
+        }
+        if (tree != null) {
+            tree.addTerminal(input, position, end);
+        }
+        return end;
+    }
+
+    private int match(Input input, int position, TerminalCache cache) {
+        int end = cache == null ? TerminalCache.UNKNOWN : cache.get(id, position);
+        if (end != TerminalCache.UNKNOWN) {
+            return end;
+        }
+        end = input.match(matcher, position);
+        if (end == TerminalMatcher.NO_MATCH) {
+            end = FAIL;
+        }
+        if (cache != null) {
+            cache.put(id, position, end);
+        }
+        return end;
+    }
+}
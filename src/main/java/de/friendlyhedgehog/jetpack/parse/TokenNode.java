@@ -0,0 +1,28 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * Matches a token of a {@link LexedInput} by its type. The token of a token rule is wrapped into a node of its rule,
+ * so the tree is the same as when parsing without lexer.
+ *
+ * @param rule the token rule, {@code null} for a terminal of another rule
+ */
+record TokenNode(int type, RuleNode rule) implements ParserNode {
+
+    @Override
+    public int parse(Input input, int position, ParsingState parsingState, TreeBuffer tree) {
+        if (input.atEnd(position) || ((LexedInput) input).type(position) != type) {
+            if (tree != null) {
+                parsingState.fail(type, position);
+            }
+            return FAIL;
+        }
+        if (tree != null) {
+            int mark = tree.size();
+            tree.addTerminal(input, position, position + 1);
+            if (rule != null) {
+                tree.wrap(mark, rule, position, position + 1);
+            }
+        }
+        return position + 1;
+    }
+}
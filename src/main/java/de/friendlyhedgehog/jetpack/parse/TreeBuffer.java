@@ -0,0 +1,51 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+/**
+ * Collects the parse tree while parsing. Nodes append their results, a rule collapses everything its body appended
+ * into one node. Backtracking simply truncates the buffer to the size it had before.
+ * The node of a memoized rule is identified by an int handle, which the memo table stores with the entry, so the result
+ * can be appended again.
+ */
+sealed interface TreeBuffer permits NodeTreeBuffer, FlatTreeBuffer {
+
+    /**
+     * @return number of results appended and not yet collapsed into a rule
+     */
+    int size();
+
+    void truncate(int size);
+
+    void addTerminal(Input input, int start, int end);
+
+    /**
+     * Replaces all results appended since {@code from} by one node of the rule having them as children.
+     */
+    default void wrap(int from, RuleNode rule, int start, int end) {
+        wrap(from, size(), rule, start, end);
+    }
+
+    /**
+     * Replaces the results appended from {@code from} up to {@code to} by one node of the rule having them as
+     * children. The results after them stay behind the new node.
+     */
+    void wrap(int from, int to, RuleNode rule, int start, int end);
+
+    /**
+     * Like {@link #wrap(int, RuleNode, int, int)} for the result of a rule that is stored in the memo table.
+     *
+     * @return handle of the new node, valid until the node is {@link #removeBefore removed}
+     */
+    int wrapMemoized(int from, RuleNode rule, int start, int end);
+
+    /**
+     * Appends the node of a previous {@link #wrapMemoized} again.
+     */
+    void add(int handle);
+
+    /**
+     * Called when the memo entries before the position are discarded, the nodes of rules starting there can't be
+     * appended again.
+     */
+    default void removeBefore(int position) {
+    }
+}
@@ -0,0 +1,177 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * UTF-8 bytes read as text without decoding them as a whole. Indices are those of the decoded {@link String}, a
+ * supplementary character counts as two characters. A character is decoded when it is read, a
+ * {@link #subSequence(int, int)} is decoded into a {@link String}.
+ * <p>
+ * To find the bytes of an index, the byte offset and index of the first character of every block of {@link #BLOCK}
+ * bytes is kept, about 3% of the size of the bytes. Parsing mostly reads close to the previous read, so the text
+ * remembers the character read last and walks from there. Like {@link Input}, the text must not be read by several
+ * threads at once.
+ */
+final class Utf8Text implements CharSequence {
+
+    private static final int BLOCK = 256;
+
+    private final MemorySegment bytes;
+    private final int length;
+    /**
+     * Byte offset and index of the first character starting in every block, followed by the size and the length.
+     */
+    private final int[] blockOffsets;
+    private final int[] blockIndices;
+    /**
+     * Byte offset and index of the character read last.
+     */
+    private int cursorOffset;
+    private int cursorIndex;
+
+    private Utf8Text(MemorySegment bytes, int length, int[] blockOffsets, int[] blockIndices) {
+        this.bytes = bytes;
+        this.length = length;
+        this.blockOffsets = blockOffsets;
+        this.blockIndices = blockIndices;
+    }
+
+    /**
+     * Indexes the blocks while checking that the bytes are valid UTF-8, the decoded characters are only counted.
+     *
+     * @param bytes at most {@link Integer#MAX_VALUE} of them, they must not be modified while the text is used
+     */
+    static Utf8Text of(MemorySegment bytes) throws CharacterCodingException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = bytes.asByteBuffer();
+        int size = in.remaining();
+        CharBuffer out = CharBuffer.allocate(BLOCK);
+        int blocks = (int) (((long) size + BLOCK - 1) / BLOCK);
+        int[] blockOffsets = new int[blocks + 1];
+        int[] blockIndices = new int[blocks + 1];
+        int length = 0;
+        for (int block = 0; block < blocks; ++block) {
+            blockOffsets[block] = in.position();
+            blockIndices[block] = length;
+            in.limit((int) Math.min(size, (long) (block + 1) * BLOCK));
+            CoderResult result;
+            while ((result = decoder.decode(in, out, block + 1 == blocks)).isOverflow()) {
+                length += out.position();
+                out.clear();
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+            length += out.position();
+            out.clear();
+        }
+        blockOffsets[blocks] = size;
+        blockIndices[blocks] = length;
+        return new Utf8Text(bytes, length, blockOffsets, blockIndices);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        Objects.checkIndex(index, length);
+        seek(index);
+        int lead = byteAt(cursorOffset);
+        if (lead < 0x80) {
+            return (char) lead;
+        }
+        int codePoint = codePointAt(cursorOffset);
+        if (!Character.isSupplementaryCodePoint(codePoint)) {
+            return (char) codePoint;
+        }
+        return index == cursorIndex ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        Objects.checkFromToIndex(start, end, length);
+        if (start == end) {
+            return "";
+        }
+        seek(start);
+        int from = cursorOffset;
+        int skipped = start - cursorIndex;
+        seek(end - 1);
+        int lead = byteAt(cursorOffset);
+        int to = cursorOffset + sequenceLength(lead);
+        int dropped = cursorIndex + width(lead) - end;
+        String decoded = new String(bytes.asSlice(from, to - from).toArray(ValueLayout.JAVA_BYTE),
+                StandardCharsets.UTF_8);
+        return skipped == 0 && dropped == 0 ? decoded : decoded.substring(skipped, decoded.length() - dropped);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes.toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Moves the cursor to the character of the index, walking from the cursor or from the start of the block.
+     */
+    private void seek(int index) {
+        if (index < cursorIndex - BLOCK || index >= cursorIndex + BLOCK) {
+            int found = Arrays.binarySearch(blockIndices, index);
+            int block = found >= 0 ? found : -found - 2;
+            cursorOffset = blockOffsets[block];
+            cursorIndex = blockIndices[block];
+        }
+        while (cursorIndex > index) {
+            do {
+                --cursorOffset;
+            } while ((byteAt(cursorOffset) & 0xC0) == 0x80);
+            cursorIndex -= width(byteAt(cursorOffset));
+        }
+        for (int lead = byteAt(cursorOffset); index >= cursorIndex + width(lead); lead = byteAt(cursorOffset)) {
+            cursorIndex += width(lead);
+            cursorOffset += sequenceLength(lead);
+        }
+    }
+
+    private int byteAt(int offset) {
+        return bytes.get(ValueLayout.JAVA_BYTE, offset) & 0xFF;
+    }
+
+    /**
+     * Decodes the character starting at the offset, the bytes have been checked to be valid.
+     */
+    private int codePointAt(int offset) {
+        int lead = byteAt(offset);
+        int count = sequenceLength(lead);
+        int codePoint = count == 1 ? lead : lead & 0x7F >> count;
+        for (int i = 1; i < count; ++i) {
+            codePoint = codePoint << 6 | byteAt(offset + i) & 0x3F;
+        }
+        return codePoint;
+    }
+
+    private static int sequenceLength(int lead) {
+        return lead < 0x80 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : 4;
+    }
+
+    /**
+     * @return the number of chars of the character, two for a supplementary character
+     */
+    private static int width(int lead) {
+        return lead < 0xF0 ? 1 : 2;
+    }
+}
@@ -0,0 +1,69 @@
+package de.friendlyhedgehog.jetpack.datatypes;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackedMemoTableTest {
+
+    @Test
+    void missingKey() {
+        PackedMemoTable table = PackedMemoTable.of();
+        assertEquals(PackedMemoTable.ABSENT, table.get(0, 0));
+        assertEquals(PackedMemoTable.ABSENT, table.getPayload(0, 0));
+    }
+
+    @Test
+    void idAndPositionAreDistinct() {
+        PackedMemoTable table = PackedMemoTable.of();
+        table.insert(1, 2, 12, 100);
+        table.insert(2, 1, 21, 200);
+        assertEquals(12, table.get(1, 2));
+        assertEquals(100, table.getPayload(1, 2));
+        assertEquals(21, table.get(2, 1));
+        assertEquals(200, table.getPayload(2, 1));
+        assertEquals(PackedMemoTable.ABSENT, table.get(1, 1));
+    }
+
+    @Test
+    void overwriteReplacesPayload() {
+        PackedMemoTable table = PackedMemoTable.of();
+        table.insert(0, 0, 1, 100);
+        table.insert(0, 0, -1);
+        assertEquals(-1, table.get(0, 0));
+        assertEquals(PackedMemoTable.ABSENT, table.getPayload(0, 0));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void grows() {
+        PackedMemoTable table = PackedMemoTable.withExpectedSize(4);
+        for (int position = 0; position < 10_000; ++position) {
+            table.insert(position % 7, position, -position, payload(position));
+        }
+        assertEquals(10_000, table.size());
+        for (int position = 0; position < 10_000; ++position) {
+            assertEquals(-position, table.get(position % 7, position));
+            assertEquals(payload(position), table.getPayload(position % 7, position));
+        }
+    }
+
+    @Test
+    void removeBefore() {
+        PackedMemoTable table = PackedMemoTable.of();
+        for (int position = 0; position < 1000; ++position) {
+            table.insert(position % 3, position, position + 1, payload(position));
+        }
+        table.removeBefore(600);
+        assertEquals(400, table.size());
+        assertEquals(PackedMemoTable.ABSENT, table.get(599 % 3, 599));
+        for (int position = 600; position < 1000; ++position) {
+            assertEquals(position + 1, table.get(position % 3, position));
+            assertEquals(payload(position), table.getPayload(position % 3, position));
+        }
+    }
+
+    private static int payload(int position) {
+        return position % 2 == 0 ? position : PackedMemoTable.ABSENT;
+    }
+}
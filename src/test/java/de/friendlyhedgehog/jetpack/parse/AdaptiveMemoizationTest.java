@@ -0,0 +1,57 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveMemoizationTest {
+
+    @Test
+    void stopsMemoizingRarelyReusedRule() {
+        AdaptiveMemoization adaptive = new AdaptiveMemoization();
+        for (int i = 0; i < AdaptiveMemoization.SAMPLE - 1; ++i) {
+            adaptive.stored(3);
+        }
+        assertTrue(adaptive.memoizes(3));
+        adaptive.stored(3);
+        assertFalse(adaptive.memoizes(3));
+        assertTrue(adaptive.memoizes(2));
+    }
+
+    @Test
+    void keepsMemoizingReusedRule() {
+        AdaptiveMemoization adaptive = new AdaptiveMemoization();
+        for (int i = 0; i < 4 * AdaptiveMemoization.SAMPLE; ++i) {
+            adaptive.stored(0);
+            if (i % AdaptiveMemoization.MAX_STORES_PER_HIT == 0) {
+                adaptive.hit(0);
+            }
+        }
+        assertTrue(adaptive.memoizes(0));
+    }
+
+    @Test
+    void keepsMemoizingReusedFailures() {
+        Grammar grammar = new Grammar(
+                "S",
+                Map.of(
+                        "S", plus(orderedChoice(
+                                sequence(nonTerminal("A"), terminal("x")),
+                                sequence(nonTerminal("A"), terminal("y")),
+                                terminal("z")
+                        )),
+                        "A", sequence(terminal("z"), terminal("w"))
+                ),
+                Map.of("A", Memoization.ADAPTIVE)
+        );
+        CompiledGrammar compiled = CompiledGrammar.of(grammar);
+        Input input = Input.of("z ".repeat(4 * AdaptiveMemoization.SAMPLE).trim(), "\\s");
+        try (ParsingState state = compiled.state(ParseOptions.defaults(), input)) {
+            assertEquals(input.length(), compiled.startingRule().parse(input, 0, state, null));
+            assertTrue(state.getAdaptiveMemoization().memoizes(grammar.ruleId("A")));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteTextTest {
+
+    @Test
+    void readsBytesAsLatin1() throws IOException {
+        Path file = write("abä\ncd".getBytes(StandardCharsets.ISO_8859_1));
+        try {
+            CharSequence text = ByteText.of(file, StandardCharsets.ISO_8859_1);
+            assertInstanceOf(ByteText.class, text);
+            assertEquals(6, text.length());
+            assertEquals('ä', text.charAt(2));
+            assertEquals("ä\nc", text.subSequence(2, 5).toString());
+            assertEquals("c", text.subSequence(2, 5).subSequence(2, 3).toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void parsesFile() throws IOException {
+        Grammar grammar = new Grammar(
+                "Sum",
+                Map.of(
+                        "Sum", sequence(nonTerminal("Num"), star(sequence(terminal("\\+"), nonTerminal("Num")))),
+                        "Num", terminal("[0-9]+")
+                )
+        );
+        String input = "12 + 3\n+ 456 + ".repeat(1000) + "7";
+        Path file = write(input.getBytes(StandardCharsets.US_ASCII));
+        try {
+            assertEquals(grammar.parse(input).getEither(), grammar.parse(file).getEither());
+            ParseOptions iterative = ParseOptions.defaults().withEngine(ParseOptions.Engine.ITERATIVE);
+            assertEquals(grammar.parse(input).getEither(), grammar.parseFlat(file, iterative).getEither().toNode());
+            assertEquals("Could only match 3 of 4 characters, expected [0-9]+ at position 4", grammar.parse(write(file, "1 + 2 +")).getOr());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void readsNonAsciiUtf8() throws IOException {
+        Grammar grammar = new Grammar("S", Map.of("S", plus(orderedChoice(terminal("äß"), terminal("[a-zäöüß]+")))));
+        String input = "grüße äß strasse";
+        Path file = write(input.getBytes(StandardCharsets.UTF_8));
+        try {
+            assertInstanceOf(Utf8Text.class, ByteText.of(file, StandardCharsets.UTF_8));
+            assertEquals(grammar.parse(input).getEither(), grammar.parse(file).getEither());
+            assertEquals(grammar.parse(input).getEither(), grammar.parseFlat(file).getEither().toNode());
+            assertEquals(Symbol.terminal("grüße"), grammar.parse(file).getEither().getChildren().getFirst().getValue());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void rejectsFilesOverTwoGiB() throws IOException {
+        Path file = Files.createTempFile("jetpack", ".txt");
+        try {
+            try (RandomAccessFile sparse = new RandomAccessFile(file.toFile(), "rw")) {
+                sparse.setLength(Integer.MAX_VALUE + 1L);
+            }
+            Grammar grammar = new Grammar("S", Map.of("S", plus(terminal("[a-z]+"))));
+            assertThrows(IllegalArgumentException.class, () -> grammar.parse(file));
+            assertThrows(IllegalArgumentException.class, () -> grammar.parseFlat(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void readsAsciiUtf8AsBytes() {
+        ByteBuffer ascii = ByteBuffer.wrap("plain text".getBytes(StandardCharsets.UTF_8));
+        assertInstanceOf(ByteText.class, ByteText.of(ascii, StandardCharsets.UTF_8));
+        assertInstanceOf(ByteText.class, ByteText.of(ascii, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        ByteBuffer latin1 = ByteBuffer.wrap("grüße".getBytes(StandardCharsets.ISO_8859_1));
+        assertThrows(UncheckedIOException.class, () -> ByteText.of(latin1, StandardCharsets.UTF_8));
+        Grammar grammar = new Grammar("S", Map.of("S", terminal("[a-zäöüß]+")));
+        assertEquals(grammar.parse("grüße").getEither(),
+                grammar.parse(latin1, StandardCharsets.ISO_8859_1, ParseOptions.defaults()).getEither());
+    }
+
+    @Test
+    void parsesBytes() {
+        Grammar grammar = new Grammar("S", Map.of("S", plus(terminal("[a-z]+"))));
+        byte[] bytes = "xx abc de f".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 3, bytes.length - 3);
+        assertEquals(grammar.parse("abc de f").getEither(), grammar.parse(buffer).getEither());
+        FlatParseTree tree = grammar.parseFlat(buffer).getEither();
+        assertEquals(grammar.parse("abc de f").getEither(), tree.toNode());
+    }
+
+    private static Path write(byte[] content) throws IOException {
+        Path file = Files.createTempFile("jetpack", ".txt");
+        Files.write(file, content);
+        return file;
+    }
+
+    private static Path write(Path file, String content) throws IOException {
+        return Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,181 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledGrammarTest {
+
+    @Test
+    void terminalsShareIds() {
+        ParserNode compiled = CompiledGrammar.compile(
+                orderedChoice(sequence(terminal("a"), terminal("b")), sequence(terminal("a"), terminal("c"))),
+                Map.of()
+        );
+        ChoiceNode choice = assertInstanceOf(ChoiceNode.class, compiled);
+        SequenceNode first = assertInstanceOf(SequenceNode.class, choice.alternatives()[0]);
+        SequenceNode second = assertInstanceOf(SequenceNode.class, choice.alternatives()[1]);
+        assertSame(first.elements()[0], second.elements()[0]);
+        assertNotEquals(((TerminalNode) first.elements()[1]).id(), ((TerminalNode) second.elements()[1]).id());
+    }
+
+    @Test
+    void optimizesAndKeepsRuleIds() {
+        Grammar grammar = new Grammar("S", Map.of(
+                "S", nonTerminal("B"),
+                "A", terminal("a"),
+                "B", group(orderedChoice(terminalLiteral("b"), terminalLiteral("c")))
+        ));
+        CompiledGrammar compiled = CompiledGrammar.of(grammar);
+        assertNull(compiled.ruleNames()[grammar.ruleId("A")]);
+        assertEquals("B", compiled.ruleNames()[grammar.ruleId("B")]);
+        assertEquals(grammar.parse("c").getEither(), grammar.parseFlat("c").getEither().toNode());
+    }
+
+    @Test
+    void compilesWithChosenOptimization() {
+        Grammar grammar = new Grammar("S", Map.of(
+                "S", sequence(nonTerminal("B"), nonTerminal("B")),
+                "A", terminal("a"),
+                "B", terminal("b")
+        ));
+        assertEquals(Memoization.NEVER, calledRule(CompiledGrammar.of(grammar)).memoization());
+
+        Grammar disabled = grammar.withOptimization(GrammarOptimizer.Settings.disabled());
+        CompiledGrammar compiled = CompiledGrammar.of(disabled);
+        assertEquals("A", compiled.ruleNames()[grammar.ruleId("A")]);
+        assertEquals(Memoization.ALWAYS, calledRule(compiled).memoization());
+        assertTrue(disabled.fitsGrammar("b b"));
+
+        GrammarOptimizer.Settings dropOnly = new GrammarOptimizer.Settings(
+                true, false, false, GrammarOptimizer.Inlining.NONE);
+        Grammar optimized = GrammarOptimizer.optimize(grammar, dropOnly).grammar();
+        assertEquals(Memoization.ALWAYS, calledRule(CompiledGrammar.of(optimized)).memoization());
+    }
+
+    @Test
+    void keepsChosenMemoization() {
+        Grammar grammar = Grammar.of("""
+                S <- A B
+                @memo A <- "a"
+                B <- "b"
+                """).getEither();
+        SequenceNode body = assertInstanceOf(SequenceNode.class, CompiledGrammar.of(grammar).startingRule().body());
+        assertEquals(Memoization.ALWAYS, assertInstanceOf(RuleNode.class, body.elements()[0]).memoization());
+        assertEquals(Memoization.NEVER, assertInstanceOf(RuleNode.class, body.elements()[1]).memoization());
+    }
+
+    private static RuleNode calledRule(CompiledGrammar compiled) {
+        SequenceNode body = assertInstanceOf(SequenceNode.class, compiled.startingRule().body());
+        return assertInstanceOf(RuleNode.class, body.elements()[0]);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"a b,true", "a c,true", "a d,false", "a,false"})
+    void terminalCacheKeepsResults(String text, boolean expected) {
+        Grammar grammar = new Grammar("S", Map.of(
+                "S", orderedChoice(sequence(terminal("a"), terminal("b")), sequence(terminal("a"), terminal("c")))
+        ));
+        ParseOptions cached = ParseOptions.defaults().withTerminalCache(true);
+        assertEquals(expected, grammar.fitsGrammar(text, cached));
+        assertEquals(grammar.parse(text).toString(), grammar.parse(text, cached).toString());
+        assertEquals(grammar.parse(text).toString(),
+                grammar.parse(text, cached.withEngine(ParseOptions.Engine.ITERATIVE)).toString());
+    }
+
+    @Test
+    void flattensSequences() {
+        ParserNode compiled = CompiledGrammar.compile(
+                sequence(terminal("a"), sequence(terminal("b"), group(sequence(terminal("c"), terminal("d"))))),
+                Map.of()
+        );
+        SequenceNode sequence = assertInstanceOf(SequenceNode.class, compiled);
+        assertEquals(4, sequence.elements().length);
+    }
+
+    @Test
+    void flattensChoices() {
+        ParserNode compiled = CompiledGrammar.compile(
+                orderedChoice(terminal("a"), terminal("b"), terminal("c"), sequence(terminal("d"), terminal("e"))),
+                Map.of()
+        );
+        ChoiceNode choice = assertInstanceOf(ChoiceNode.class, compiled);
+        assertEquals(4, choice.alternatives().length);
+        assertInstanceOf(SequenceNode.class, choice.alternatives()[3]);
+    }
+
+    @Test
+    void keepsOtherOperatorsInGroups() {
+        ParserNode compiled = CompiledGrammar.compile(
+                sequence(terminal("a"), group(orderedChoice(terminal("b"), terminal("c+")))),
+                Map.of()
+        );
+        SequenceNode sequence = assertInstanceOf(SequenceNode.class, compiled);
+        assertEquals(2, sequence.elements().length);
+        assertInstanceOf(ChoiceNode.class, sequence.elements()[1]);
+    }
+
+    @Test
+    void choiceDispatchesOnFirstCharacter() {
+        Grammar grammar = new Grammar(
+                "S",
+                Map.of("S", orderedChoice(terminal("if"), terminal("[0-9]+"), terminal("else"), optional(terminal("x"))))
+        );
+        ParserNode compiled = CompiledGrammar.compile(
+                grammar.getRules().get("S"),
+                Map.of(),
+                FirstSets.of(grammar)
+        );
+        ChoiceNode choice = assertInstanceOf(ChoiceNode.class, compiled);
+        Input input = Input.of("e 1 I #", "\\s");
+        assertArrayEquals(new int[]{2, 3}, choice.candidates(input, 0));
+        assertArrayEquals(new int[]{1, 3}, choice.candidates(input, 1));
+        assertArrayEquals(new int[]{0, 3}, choice.candidates(input, 2));
+        assertArrayEquals(new int[]{3}, choice.candidates(input, 3));
+        assertArrayEquals(new int[]{3}, choice.candidates(input, 4));
+    }
+
+    @Test
+    void literalChoiceBecomesTrie() {
+        ParserNode compiled = CompiledGrammar.compile(
+                orderedChoice(group(orderedChoice(terminal("AWD"), terminal("4WD"))), terminal("AC"),
+                        terminalLiteral("CarPlay")),
+                Map.of()
+        );
+        TerminalNode terminal = assertInstanceOf(TerminalNode.class, compiled);
+        assertInstanceOf(TerminalMatcher.Trie.class, terminal.matcher());
+        Input input = Input.of("carplay 4wd ACx", "\\s");
+        assertEquals(7, compiled.parse(input, 0, ParsingState.of(), null));
+        assertEquals(10, compiled.parse(input, 7, ParsingState.of(), null));
+        assertEquals(12, compiled.parse(input, 10, ParsingState.of(), null));
+        assertEquals(ParserNode.FAIL, compiled.parse(input, 12, ParsingState.of(), null));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "ab, a, 1",
+            "ab, ab, 2",
+            "a, ab, 1",
+            "abc, abc, 3",
+            "x, abc, -1",
+    })
+    void trieMatchesFirstListedLiteral(String text, String first, int end) {
+        TerminalMatcher trie = TerminalMatcher.Trie.of(List.of(first, "abc", "a", "b"), false, "");
+        assertEquals(end, trie.match(text, 0, text.length()));
+    }
+
+    @Test
+    void trieFoldsCase() {
+        TerminalMatcher insensitive = TerminalMatcher.Trie.of(List.of("Select", "From"), false, "");
+        TerminalMatcher sensitive = TerminalMatcher.Trie.of(List.of("Select", "From"), true, "");
+        assertEquals(4, insensitive.match("fROM", 0, 4));
+        assertEquals(TerminalMatcher.NO_MATCH, sensitive.match("fROM", 0, 4));
+        assertEquals(6, sensitive.match("Select", 0, 6));
+    }
+}
@@ -0,0 +1,85 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.grammar.Expression;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Map;
+
+import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FirstSetsTest {
+
+    @ParameterizedTest
+    @CsvSource(
+            delimiter = ';',
+            value = {
+                    "Literal; select; s; x",
+                    "Ignores case; select; S; x",
+                    "Escaped character; \\+; +; -",
+                    "Class; [0-9]+; 7; a",
+                    "Class with escapes; [a-c\\-]; -; d",
+                    "Range from escape; [\\\\-z]$; a; -",
+                    "Range to escape; [+-\\-]$; ,; a",
+                    "Range from hex escape; [\\x41-Z]$; B; ",
+                    "Digit escape; \\d; 3; x",
+                    "Optional first atom; a?b; b; ",
+                    "Alternation; a|b; b; z",
+                    "Group; (ab)+; a; b",
+                    "Negated class; [^a]; b; a",
+                    "Unsupported pattern; (?=a)a; z; ",
+            }
+    )
+    void terminals(String message, String pattern, char included, Character excluded) {
+        FirstSets firstSets = analyse(terminal(pattern));
+        assertTrue(firstSets.first(terminal(pattern)).contains(included), message);
+        if (excluded != null) {
+            assertFalse(firstSets.first(terminal(pattern)).contains(excluded), message);
+        }
+        assertFalse(firstSets.nullable(terminal(pattern)), message);
+    }
+
+    @Test
+    void caseSensitiveTerminal() {
+        Expression select = terminal("select", true);
+        CharSet first = analyse(select).first(select);
+        assertTrue(first.contains('s'));
+        assertFalse(first.contains('S'));
+    }
+
+    @Test
+    void sequenceSkipsNullablePrefix() {
+        Expression sequence = sequence(optional(terminal("a")), not(terminal("c")), terminal("b"));
+        FirstSets firstSets = analyse(sequence);
+        CharSet first = firstSets.first(sequence);
+        assertTrue(first.contains('a'));
+        assertTrue(first.contains('b'));
+        assertFalse(first.contains('c'));
+        assertFalse(firstSets.nullable(sequence));
+    }
+
+    @Test
+    void leftRecursiveRules() {
+        Grammar grammar = new Grammar(
+                "Expr",
+                Map.of(
+                        "Expr", orderedChoice(sequence(nonTerminal("Expr"), terminal("\\+"), nonTerminal("Num")),
+                                nonTerminal("Opt")),
+                        "Opt", orderedChoice(nonTerminal("Num"), empty()),
+                        "Num", terminal("[0-9]")
+                )
+        );
+        FirstSets firstSets = FirstSets.of(grammar);
+        CharSet first = firstSets.first(nonTerminal("Expr"));
+        assertTrue(first.contains('1'));
+        assertTrue(first.contains('+'));
+        assertTrue(firstSets.nullable(nonTerminal("Expr")));
+        assertFalse(firstSets.nullable(nonTerminal("Num")));
+    }
+
+    private static FirstSets analyse(Expression expression) {
+        return FirstSets.of(new Grammar("S", Map.of("S", expression)));
+    }
+}
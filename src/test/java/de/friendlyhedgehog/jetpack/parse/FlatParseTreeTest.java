@@ -0,0 +1,92 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.datatypes.Node;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlatParseTreeTest {
+
+    Grammar grammar = new Grammar(
+            "Expr",
+            Map.of(
+                    "Expr", orderedChoice(
+                            sequence(nonTerminal("Expr"), sequence(terminal("\\+"), nonTerminal("Num"))),
+                            nonTerminal("Num")
+                    ),
+                    "Num", terminal("[0-9]+")
+            )
+    );
+
+    @ParameterizedTest
+    @ValueSource(strings = {"1", "1+2", "12 + 3 + 456", "1+2+3+4+5+6"})
+    void convertsToNodes(String input) {
+        Node<Symbol> expected = grammar.parse(input).getEither();
+        assertEquals(expected, grammar.parseFlat(input).getEither().toNode());
+    }
+
+    @Test
+    void cursorWalksDepthFirst() {
+        FlatParseTree.Cursor cursor = grammar.parseFlat("1 + 23").getEither().cursor();
+        List<String> visited = new ArrayList<>();
+        do {
+            visited.add(cursor.depth() + ":" + (cursor.isTerminal() ? "'" + cursor.text() + "'" : cursor.ruleName()));
+        } while (next(cursor));
+        assertEquals(
+                List.of("0:Expr", "1:Expr", "2:Num", "3:'1'", "1:'+'", "1:Num", "2:'23'"),
+                visited
+        );
+    }
+
+    @Test
+    void positionsOfNodes() {
+        FlatParseTree.Cursor cursor = grammar.parseFlat("1 + 23").getEither().cursor();
+        assertEquals(0, cursor.start());
+        assertEquals(4, cursor.end());
+        assertEquals("1+23", cursor.text());
+        assertTrue(cursor.gotoFirstChild());
+        assertTrue(cursor.gotoNextSibling());
+        assertEquals(1, cursor.start());
+        assertEquals(2, cursor.end());
+        assertFalse(cursor.gotoFirstChild());
+        assertTrue(cursor.gotoParent());
+        assertFalse(cursor.gotoParent());
+        assertFalse(cursor.gotoNextSibling());
+    }
+
+    @Test
+    void memoizedNodeUnderSecondParent() {
+        Grammar sharing = new Grammar(
+                "S",
+                Map.of(
+                        "S", orderedChoice(
+                                sequence(nonTerminal("P"), terminal("!")),
+                                sequence(nonTerminal("X"), terminal("z"))
+                        ),
+                        "P", nonTerminal("X"),
+                        "X", terminal("x")
+                )
+        );
+        assertEquals(sharing.parse("x z").getEither(), sharing.parseFlat("x z").getEither().toNode());
+    }
+
+    private static boolean next(FlatParseTree.Cursor cursor) {
+        if (cursor.gotoFirstChild()) {
+            return true;
+        }
+        do {
+            if (cursor.gotoNextSibling()) {
+                return true;
+            }
+        } while (cursor.gotoParent());
+        return false;
+    }
+}
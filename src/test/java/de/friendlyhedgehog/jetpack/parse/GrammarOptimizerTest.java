@@ -0,0 +1,171 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.grammar.Expression;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GrammarOptimizerTest {
+
+    /**
+     * Vehicle <- PowerWaggon Seats
+     * PowerWaggon <- Engine
+     * Engine <- "Diesel" / "Electric" / "Steam"
+     * Seats <- "Seats" Num
+     * Num <- [0-9]+
+     * Wagon <- "Wagon"
+     */
+    private final Grammar vehicles = new Grammar(
+            "Vehicle",
+            Map.of(
+                    "Vehicle", sequence(nonTerminal("PowerWaggon"), group(nonTerminal("Seats"))),
+                    "PowerWaggon", nonTerminal("Engine"),
+                    "Engine", orderedChoice(terminal("Diesel"), terminal("Electric"), terminal("Steam")),
+                    "Seats", sequence(terminal("Seats"), nonTerminal("Num")),
+                    "Num", terminal("[0-9]+"),
+                    "Wagon", terminal("Wagon")
+            )
+    );
+
+    @Test
+    void reportsChanges() {
+        GrammarOptimizer.Result result = GrammarOptimizer.optimize(vehicles);
+        assertEquals(List.of(
+                "Dropped unreachable rule Wagon",
+                "Folded wrappers in rule Vehicle",
+                "Merged literals in rule Engine",
+                "Applying rule Engine without memoization",
+                "Applying rule Num without memoization",
+                "Applying rule PowerWaggon without memoization",
+                "Applying rule Seats without memoization"
+        ), result.changes());
+        Grammar optimized = result.grammar();
+        assertEquals(Set.of("Vehicle", "PowerWaggon", "Engine", "Seats", "Num"), optimized.getRules().keySet());
+        assertEquals(terminal("\\QDiesel\\E|\\QElectric\\E|\\QSteam\\E"), optimized.getRules().get("Engine"));
+        assertEquals(Memoization.NEVER, optimized.memoization("Seats"));
+        assertEquals(Memoization.ALWAYS, optimized.memoization("Vehicle"));
+    }
+
+    @Test
+    void keepsChosenMemoization() {
+        Grammar grammar = vehicles.withMemoization("Num", Memoization.ADAPTIVE)
+                .withMemoization("Seats", Memoization.ALWAYS);
+        GrammarOptimizer.Result result = GrammarOptimizer.optimize(grammar);
+        assertEquals(Memoization.ADAPTIVE, result.grammar().memoization("Num"));
+        assertEquals(Memoization.ALWAYS, result.grammar().memoization("Seats"));
+        assertFalse(result.changes().contains("Applying rule Num without memoization"));
+        assertFalse(result.changes().contains("Applying rule Seats without memoization"));
+    }
+
+    @Test
+    void disabledKeepsGrammar() {
+        GrammarOptimizer.Result result = GrammarOptimizer.optimize(vehicles, GrammarOptimizer.Settings.disabled());
+        assertEquals(List.of(), result.changes());
+        assertEquals(vehicles.getRules(), result.grammar().getRules());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"Diesel Seats 4", "electric Seats 12", "Steam Seats", "Wagon Seats 1"})
+    void keepsParseTrees(String input) {
+        Grammar optimized = GrammarOptimizer.optimize(vehicles).grammar();
+        assertEquals(vehicles.fitsGrammar(input), optimized.fitsGrammar(input));
+        assertEquals(vehicles.parse(input).toString(), optimized.parse(input).toString());
+    }
+
+    @Test
+    void removesInlinedNodes() {
+        GrammarOptimizer.Settings settings = new GrammarOptimizer.Settings(
+                true, true, true, GrammarOptimizer.Inlining.REMOVE_NODES);
+        Grammar optimized = GrammarOptimizer.optimize(vehicles, settings).grammar();
+        assertEquals(Set.of("Vehicle"), optimized.getRules().keySet());
+        var tree = optimized.parse("Steam Seats 3").getEither();
+        assertEquals(Symbol.nonTerminal("Vehicle"), tree.getValue());
+        assertEquals(3, tree.getChildren().size());
+    }
+
+    @Test
+    void keepsTokenTypesOfUnreachableRules() {
+        Grammar grammar = new Grammar(
+                "Names",
+                Map.of(
+                        "Names", plus(nonTerminal("Identifier")),
+                        "Identifier", terminal("[a-z]+"),
+                        "Keyword", terminalLiteral("while")
+                )
+        ).withTokens(List.of("Identifier"));
+        GrammarOptimizer.Result result = GrammarOptimizer.optimize(grammar);
+        assertTrue(result.grammar().getRules().containsKey("Keyword"));
+        assertTrue(grammar.fitsGrammar("x y"));
+        assertFalse(grammar.fitsGrammar("x while"));
+        assertFalse(result.grammar().fitsGrammar("x while"));
+    }
+
+    @Test
+    void keepsRecursiveRules() {
+        Grammar grammar = new Grammar(
+                "list",
+                Map.of(
+                        "list", sequence(nonTerminal("item"), optional(nonTerminal("list"))),
+                        "item", orderedChoice(terminal("a"), group(sequence(terminal("\\("), nonTerminal("list"),
+                                terminal("\\)"))))
+                )
+        );
+        GrammarOptimizer.Result result = GrammarOptimizer.optimize(grammar);
+        assertEquals(Memoization.ALWAYS, result.grammar().memoization("item"));
+        assertTrue(result.grammar().fitsGrammar("a ( a a ) a"));
+    }
+
+    @Test
+    void foldsWrappers() {
+        Grammar grammar = new Grammar(
+                "S",
+                Map.of("S", sequence(
+                        optional(empty()),
+                        group(optional(star(terminal("a")))),
+                        star(group(star(terminal("b"))))
+                ))
+        );
+        GrammarOptimizer.Settings settings = new GrammarOptimizer.Settings(
+                false, true, false, GrammarOptimizer.Inlining.NONE);
+        Expression folded = GrammarOptimizer.optimize(grammar, settings).grammar().getRules().get("S");
+        assertEquals(sequence(star(terminal("a")), star(group(star(terminal("b"))))), folded);
+    }
+
+    @Test
+    void mergesOnlyConsecutiveLiteralsOfSameCase() {
+        Grammar grammar = new Grammar(
+                "S",
+                Map.of("S", orderedChoice(
+                        terminalLiteral("+"),
+                        terminalLiteral("-"),
+                        terminal("[0-9]+"),
+                        terminal("x", true),
+                        terminal("y")
+                ))
+        );
+        Expression merged = GrammarOptimizer.optimize(grammar).grammar().getRules().get("S");
+        assertEquals(orderedChoice(
+                terminal("\\Q+\\E|\\Q-\\E"),
+                terminal("[0-9]+"),
+                terminal("x", true),
+                terminal("y")
+        ), merged);
+    }
+
+    @Test
+    void mergedLiteralsKeepFirstSets() {
+        FirstSets firstSets = FirstSets.of(new Grammar("S", Map.of("S", terminal("\\Qab\\E|\\Qc\\E"))));
+        CharSet first = firstSets.first(terminal("\\Qab\\E|\\Qc\\E"));
+        assertTrue(first.contains('a'));
+        assertTrue(first.contains('c'));
+        assertFalse(first.contains('b'));
+    }
+}
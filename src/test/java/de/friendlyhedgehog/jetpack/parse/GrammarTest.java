@@ -4,6 +4,7 @@ package de.friendlyhedgehog.jetpack.parse;
 import de.friendlyhedgehog.jetpack.datatypes.Either;
 import de.friendlyhedgehog.jetpack.datatypes.Node;
 import de.friendlyhedgehog.jetpack.grammar.Expression;
+import de.friendlyhedgehog.jetpack.grammar.Operator;
 import de.friendlyhedgehog.jetpack.grammar.Symbol;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -11,8 +12,13 @@ import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
 import static de.friendlyhedgehog.jetpack.parse.ParseTreeBuilder.createTree;
@@ -93,6 +99,78 @@ public class GrammarTest {
                 );
                 assertEquals(expected, parseTree);
             }
+
+            @ParameterizedTest
+            @CsvSource(value = {
+                    "10",
+                    "(1)+(1)",
+                    "19 ^ 3 / 1 * 5 + (4 - 2) * 3",
+            })
+            void offHeapMemo(String expr) {
+                ParseOptions offHeap = ParseOptions.defaults().withMemoBackend(ParseOptions.MemoBackend.OFF_HEAP);
+                assertEquals(testGrammar.parse(expr).getEither(), testGrammar.parse(expr, offHeap).getEither());
+            }
+
+            @ParameterizedTest
+            @CsvSource(value = {
+                    "10",
+                    "(1)+(1)",
+                    "19 ^ 3 / 1 * 5 + (4 - 2) * 3",
+            })
+            void iterativeEngine(String expr) {
+                ParseOptions iterative = ParseOptions.defaults().withEngine(ParseOptions.Engine.ITERATIVE);
+                assertEquals(testGrammar.parse(expr).getEither(), testGrammar.parse(expr, iterative).getEither());
+            }
+
+            @Test
+            void deeplyNested() {
+                ParseOptions iterative = ParseOptions.defaults().withEngine(ParseOptions.Engine.ITERATIVE);
+                String expr = "(".repeat(100_000) + "1" + ")".repeat(100_000);
+                assertTrue(testGrammar.fitsGrammar(expr, iterative));
+                FlatParseTree parseTree = testGrammar.parseFlat(expr, iterative).getEither();
+                assertEquals(expr.length(), parseTree.cursor().end());
+                assertEquals(Symbol.nonTerminal("Expr"), parseTree.toNode().getValue());
+            }
+
+            @ParameterizedTest
+            @CsvSource(value = {"RECURSIVE", "ITERATIVE"})
+            void reportsFarthestFailure(String engine) {
+                ParseOptions options = ParseOptions.defaults().withEngine(ParseOptions.Engine.valueOf(engine));
+                assertEquals("Could not match rule Expr, expected one of [[0-9]+, \\(] at position 3",
+                        testGrammar.parse("(1 +", options).getOr());
+            }
+
+            @ParameterizedTest
+            @CsvSource(value = {"RECURSIVE", "ITERATIVE"})
+            void reportsSkippedAlternatives(String engine) {
+                Grammar grammar = new Grammar("S", Map.of(
+                        "S", orderedChoice(sequence(terminal("a"), terminal("b")), nonTerminal("C")),
+                        "C", sequence(optional(terminal("c")), terminal("d"))
+                ));
+                ParseOptions options = ParseOptions.defaults().withEngine(ParseOptions.Engine.valueOf(engine));
+                assertEquals("Could not match rule S, expected one of [\"a\", \"c\", \"d\"] at position 0",
+                        grammar.parse("x", options).getOr());
+            }
+
+            @Test
+            void reportsLiteralsOfMergedChoice() {
+                Grammar grammar = new Grammar("S", Map.of(
+                        "S", sequence(orderedChoice(terminalLiteral("+"), terminalLiteral("-")), terminal("[0-9]+"))
+                ));
+                assertEquals("Could not match rule S, expected one of [\"+\", \"-\"] at position 0",
+                        grammar.parse("x 1").getOr());
+            }
+        }
+
+        @Test
+        void ruleIdsAreDense() {
+            assertEquals(0, testGrammar.ruleId("Expr"));
+            assertEquals(
+                    Set.of(0, 1, 2, 3, 4),
+                    Stream.of("Expr", "Sum", "Product", "Power", "Value")
+                            .map(testGrammar::ruleId)
+                            .collect(Collectors.toSet())
+            );
         }
 
         @Nested
@@ -116,6 +194,38 @@ public class GrammarTest {
                     assertEquals(testGrammar.getRules().get(key), actual.getRules().get(key), "Comparing rule: " + key);
                 }
             }
+
+            @Test
+            void annotationsSetMemoization() {
+                Grammar actual = Grammar.of("""
+                        Expr <- Sum
+                        @adaptive Sum <- Product (("\\+" / "-") Product)*
+                        @nomemo Product <- Value
+                        @memo Value <- "[0-9]+"
+                        """).getEither();
+                assertEquals(Memoization.ALWAYS, actual.memoization("Expr"));
+                assertEquals(Memoization.ADAPTIVE, actual.memoization("Sum"));
+                assertEquals(Memoization.NEVER, actual.memoization("Product"));
+                assertEquals(Memoization.ALWAYS, actual.memoization("Value"));
+                assertTrue(actual.fitsGrammar("1 + 2 - 3"));
+            }
+
+            @Test
+            void unknownAnnotation() {
+                assertInstanceOf(Either.Or.class, Grammar.of("@cached Expr <- \"[0-9]+\""));
+            }
+        }
+
+        @ParameterizedTest
+        @CsvSource({"NEVER", "ADAPTIVE"})
+        void memoizationKeepsTree(Memoization memoization) {
+            String expr = "2 ^ ( 3 + 4 * 5 ) - 7 / ( 1 + 1 ) ^ 2";
+            Grammar grammar = testGrammar;
+            for (String rule : List.of("Sum", "Product", "Power", "Value")) {
+                grammar = grammar.withMemoization(rule, memoization);
+            }
+            assertEquals(testGrammar.parse(expr).getEither(), grammar.parse(expr).getEither());
+            assertTrue(grammar.fitsGrammar(expr, ParseOptions.defaults().withEngine(ParseOptions.Engine.ITERATIVE)));
         }
 
         /**
@@ -205,6 +315,14 @@ public class GrammarTest {
             assertFalse(actual, "Does not Match missing num at the end");
         }
 
+        @Test
+        @Timeout(5)
+        void growsLongChains() {
+            String chain = String.join(" - ", Collections.nCopies(50_000, "1"));
+            assertTrue(grammar.fitsGrammar(chain));
+            assertInstanceOf(Either.This.class, grammar.parse(chain));
+        }
+
         @CsvSource(value = {
                 "Single Number,1,true",
                 "Two Numbers,1-1,true",
@@ -302,6 +420,20 @@ public class GrammarTest {
                                 createTree(List.of("Num", "Digit"), List.of(terminalLeaf("1")))));
                 assertEquals(expected, grammar.parse("100 + 1").getEither());
             }
+
+            @Test
+            void offHeapMemo() {
+                ParseOptions offHeap = ParseOptions.defaults().withMemoBackend(ParseOptions.MemoBackend.OFF_HEAP);
+                String input = "1234567890 + 1 + 22 + 333".repeat(100).replace("3331", "333 + 1");
+                assertEquals(grammar.parse(input).getEither(), grammar.parse(input, offHeap).getEither());
+            }
+
+            @Test
+            void iterativeEngine() {
+                ParseOptions iterative = ParseOptions.defaults().withEngine(ParseOptions.Engine.ITERATIVE);
+                String input = "1234567890 + 1 + 22 + 333".repeat(100).replace("3331", "333 + 1");
+                assertEquals(grammar.parse(input).getEither(), grammar.parse(input, iterative).getEither());
+            }
         }
     }
 
@@ -337,4 +469,319 @@ public class GrammarTest {
             assertEquals(expected, actual, message);
         }
     }
-}
\ No newline at end of file
+
+    @Nested
+    class NestedLeftRecursion {
+        /**
+         * S <- L
+         * L <- L "x" / M
+         * M <- M "y" / L "z" / "w"
+         */
+        Grammar grammar = new Grammar(
+                "S",
+                Map.of(
+                        "S", nonTerminal("L"),
+                        "L", orderedChoice(sequence(nonTerminal("L"), terminal("x")), nonTerminal("M")),
+                        "M", orderedChoice(
+                                sequence(nonTerminal("M"), terminal("y")),
+                                sequence(nonTerminal("L"), terminal("z")),
+                                terminal("w")
+                        )
+                )
+        );
+
+        @ParameterizedTest
+        @CsvSource({
+                "w x,RECURSIVE,HEAP", "w z x,RECURSIVE,HEAP", "w y x,RECURSIVE,HEAP", "w x x,RECURSIVE,HEAP",
+                "w x,ITERATIVE,HEAP", "w z x,ITERATIVE,HEAP", "w y x,ITERATIVE,HEAP", "w x x,ITERATIVE,HEAP",
+                "w x,RECURSIVE,OFF_HEAP", "w z x,RECURSIVE,OFF_HEAP", "w y x,RECURSIVE,OFF_HEAP",
+                "w x x,RECURSIVE,OFF_HEAP"
+        })
+        void growsOuterRecursionAfterNestedOne(String input, String engine, String backend) {
+            ParseOptions options = ParseOptions.defaults()
+                    .withEngine(ParseOptions.Engine.valueOf(engine))
+                    .withMemoBackend(ParseOptions.MemoBackend.valueOf(backend));
+            assertTrue(grammar.fitsGrammar(input, options));
+            assertTrue(grammar.withOptimization(GrammarOptimizer.Settings.disabled()).fitsGrammar(input, options));
+            assertEquals(Symbol.terminal("x"), grammar.parse(input, options).getEither()
+                    .getChildren().getFirst().getChildren().getLast().getValue());
+        }
+    }
+
+    @Nested
+    class Predicates {
+        Grammar grammar = new Grammar(
+                "S",
+                Map.of(
+                        "S", sequence(and(nonTerminal("Pair")), sequence(nonTerminal("Pair"), not(terminal("a")))),
+                        "Pair", sequence(terminal("a"), terminal("b"))
+                )
+        );
+
+        @Test
+        void recognizes() {
+            assertTrue(grammar.fitsGrammar("a b"));
+            assertFalse(grammar.fitsGrammar("a b a"));
+        }
+
+        @Test
+        void ruleFirstAppliedInPredicateIsPartOfTree() {
+            Node<Symbol> actual = grammar.parse("ab").getEither();
+            Node<Symbol> expected = createTree(
+                    List.of("S"),
+                    List.of(createTree(List.of("Pair"), List.of(terminalLeaf("a"), terminalLeaf("b"))))
+            );
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Nested
+    class Cut {
+        /**
+         * Statements <- Statement*
+         * Statement  <- "let" ~ Name "=" Num / Name "=" Num
+         * Name       <- "[a-z]+"
+         * Num        <- "[0-9]+"
+         */
+        Grammar grammar = new Grammar(
+                "Statements",
+                Map.of(
+                        "Statements", star(nonTerminal("Statement")),
+                        "Statement", orderedChoice(
+                                sequence(terminalLiteral("let"), cut(), nonTerminal("Name"), terminalLiteral("="),
+                                        nonTerminal("Num")),
+                                sequence(nonTerminal("Name"), terminalLiteral("="), nonTerminal("Num"))
+                        ),
+                        "Name", terminal("[a-z]+"),
+                        "Num", terminal("[0-9]+")
+                )
+        );
+
+        @ParameterizedTest
+        @CsvSource({"let x = 1, true", "x = 1 y = 2, true", "let = 1, false", "let let = 1, true"})
+        void commitsToAlternative(String expr, boolean expected) {
+            assertEquals(expected, grammar.fitsGrammar(expr));
+            assertEquals(expected, grammar.fitsGrammar(expr,
+                    ParseOptions.defaults().withEngine(ParseOptions.Engine.ITERATIVE)));
+        }
+
+        @Test
+        void parsesFromText() {
+            Grammar actual = Grammar.of("""
+                    Statement <- "let" ~ Name "=" "[0-9]+" / Name "=" "[0-9]+"
+                    Name <- "[a-z]+"
+                    """).getEither();
+            assertEquals(orderedChoice(
+                    sequence(terminal("let"), cut(), nonTerminal("Name"), terminal("="), terminal("[0-9]+")),
+                    sequence(nonTerminal("Name"), terminal("="), terminal("[0-9]+"))
+            ), actual.getRules().get("Statement"));
+            assertFalse(actual.fitsGrammar("let = 1"));
+        }
+
+        @Test
+        void requiresChoice() {
+            Map<String, Expression> outside = Map.of("S", sequence(terminal("a"), cut(), terminal("b")));
+            assertThrows(IllegalArgumentException.class, () -> new Grammar("S", outside));
+            Map<String, Expression> inPredicate = Map.of("S", orderedChoice(
+                    sequence(not(sequence(terminal("a"), cut())), terminal("b")),
+                    terminal("a")
+            ));
+            assertThrows(IllegalArgumentException.class, () -> new Grammar("S", inPredicate));
+            assertEquals("Cut outside of an ordered choice in rule S", Grammar.of("S <- \"a\" ~ \"b\"").getOr());
+        }
+
+        @Test
+        void cutIsScopedToInnermostChoice() {
+            Grammar nested = new Grammar("S", Map.of("S", orderedChoice(
+                    sequence(terminal("a"), group(orderedChoice(sequence(terminal("b"), cut(), terminal("c")),
+                            terminal("b"))), terminal("d")),
+                    sequence(terminal("a"), terminal("b"), terminal("x"))
+            )));
+            assertTrue(nested.fitsGrammar("a b x"));
+            assertFalse(nested.fitsGrammar("a b d"));
+            assertTrue(nested.fitsGrammar("a b c d"));
+        }
+
+        @Test
+        void compactedMemoKeepsTree() {
+            String input = "let a = 1 b = 22 let cd = 333 ".repeat(2000);
+            Node<Symbol> expected = grammar.parse(input).getEither();
+            assertEquals(6000, expected.getChildren().size());
+            ParseOptions iterative = ParseOptions.defaults().withEngine(ParseOptions.Engine.ITERATIVE);
+            ParseOptions offHeap = ParseOptions.defaults().withMemoBackend(ParseOptions.MemoBackend.OFF_HEAP);
+            assertEquals(expected, grammar.parse(input, iterative).getEither());
+            assertEquals(expected, grammar.parse(input, offHeap).getEither());
+            assertTrue(grammar.fitsGrammar(input, offHeap.withEngine(ParseOptions.Engine.ITERATIVE)));
+        }
+    }
+
+    @Nested
+    class Layout {
+        /**
+         * Sum      <- Value ("\+" Value)*
+         * Value    <- Num / "\(" Sum "\)" / "hello world"
+         * Num      <- [0-9]+
+         * Spacing  <- ("\s+" / Comment)*
+         * Comment  <- "#[^\n]*"
+         */
+        Grammar grammar = new Grammar(
+                "Sum",
+                Map.of(
+                        "Sum", sequence(nonTerminal("Value"), star(sequence(terminal("\\+"), nonTerminal("Value")))),
+                        "Value", orderedChoice(
+                                nonTerminal("Num"),
+                                sequence(terminal("\\("), nonTerminal("Sum"), terminal("\\)")),
+                                terminal("hello world")
+                        ),
+                        "Num", terminal("[0-9]+"),
+                        "Spacing", star(orderedChoice(terminal("\\s+"), nonTerminal("Comment"))),
+                        "Comment", terminal("#[^\n]*")
+                )
+        ).withLayout("Spacing");
+
+        @ParameterizedTest
+        @CsvSource(value = {
+                "1+2;true",
+                " ( 1 + (2) ) # sum;true",
+                "hello world + 3;true",
+                "hello   world;false",
+                "12 3;false",
+                "# only a comment;false"
+        }, delimiter = ';')
+        void skipsLayout(String expr, boolean expected) {
+            assertEquals(expected, grammar.fitsGrammar(expr));
+            assertEquals(expected, grammar.fitsGrammar(expr,
+                    ParseOptions.defaults().withEngine(ParseOptions.Engine.ITERATIVE)));
+        }
+
+        @Test
+        void positionsAreOffsets() {
+            String expr = "1 +\n# two\n 2 ";
+            assertEquals("Could only match 3 of 4 characters, expected \\+ at position 3", grammar.parse("12 3").getOr());
+            FlatParseTree.Cursor cursor = grammar.parseFlat(expr).getEither().cursor();
+            assertTrue(cursor.gotoFirstChild());
+            assertTrue(cursor.gotoNextSibling());
+            assertTrue(cursor.gotoNextSibling());
+            assertEquals("Value", cursor.ruleName());
+            assertEquals(expr.indexOf('+') + 1, cursor.start());
+            assertTrue(cursor.gotoFirstChild());
+            assertTrue(cursor.gotoFirstChild());
+            assertTrue(cursor.isTerminal());
+            assertEquals(expr.indexOf('2'), cursor.start());
+            assertEquals("2", cursor.text());
+        }
+
+        @Test
+        void layoutIsNotInTree() {
+            Node<Symbol> expected = createTree(List.of("Sum"), List.of(
+                    createTree(List.of("Value", "Num"), List.of(terminalLeaf("1"))),
+                    terminalLeaf("+"),
+                    createTree(List.of("Value", "Num"), List.of(terminalLeaf("2")))
+            ));
+            assertEquals(expected, grammar.parse(" 1 # one\n + 2\n").getEither());
+            ParseOptions iterative = ParseOptions.defaults().withEngine(ParseOptions.Engine.ITERATIVE);
+            assertEquals(expected, grammar.parse(" 1 # one\n + 2\n", iterative).getEither());
+        }
+
+        @Test
+        void annotatedInGrammar() {
+            Grammar parsed = Grammar.of("""
+                    Sum <- "[0-9]+" ("\\+" "[0-9]+")*
+                    @layout Spacing <- "\\s+"
+                    """).getEither();
+            assertEquals(Optional.of("Spacing"), parsed.layout());
+            assertTrue(parsed.fitsGrammar(" 1 +2 "));
+            assertInstanceOf(Either.Or.class, Grammar.of("""
+                    Sum <- "[0-9]+"
+                    @layout Spacing <- "\\s+"
+                    @layout Blank <- "\\t"
+                    """));
+        }
+
+        @Test
+        void optimizerKeepsLayout() {
+            Grammar optimized = GrammarOptimizer.optimize(grammar).grammar();
+            assertEquals(Optional.of("Spacing"), optimized.layout());
+            assertTrue(optimized.getRules().containsKey("Spacing"));
+            assertTrue(optimized.fitsGrammar("( 1 + 2 ) # sum"));
+        }
+    }
+
+    @Nested
+    class Precedence {
+
+        Grammar grammar = Grammar.of("""
+                Expr <- Value %left "\\+" "-" %left "\\*" "/" %prefix "-" %right "\\^" %postfix "!"
+                Value <- "[0-9]+" / "\\(" Expr "\\)"
+                """).getEither();
+        ParseOptions iterative = ParseOptions.defaults().withEngine(ParseOptions.Engine.ITERATIVE);
+
+        private Node<Symbol> value(String number) {
+            return createTree(List.of("Value"), List.of(terminalLeaf(number)));
+        }
+
+        @SafeVarargs
+        private Node<Symbol> expr(Node<Symbol>... children) {
+            return createTree(List.of("Expr"), List.of(children));
+        }
+
+        private void assertTree(Node<Symbol> expected, String input) {
+            assertEquals(expected, grammar.parse(input).getEither());
+            assertEquals(expected, grammar.parse(input, iterative).getEither());
+            assertEquals(expected, GrammarOptimizer.optimize(grammar).grammar().parse(input).getEither());
+        }
+
+        @Test
+        void leftAssociativeByLevel() {
+            assertTree(expr(
+                    expr(value("1"), terminalLeaf("-"), expr(value("2"), terminalLeaf("*"), value("3"))),
+                    terminalLeaf("-"),
+                    value("4")
+            ), "1 - 2 * 3 - 4");
+        }
+
+        @Test
+        void rightAssociative() {
+            assertTree(expr(
+                    value("2"), terminalLeaf("^"), expr(value("3"), terminalLeaf("^"), value("4"))
+            ), "2 ^ 3 ^ 4");
+        }
+
+        @Test
+        void prefixAndPostfix() {
+            assertTree(expr(terminalLeaf("-"), expr(value("2"), terminalLeaf("^"), value("2"))), "- 2 ^ 2");
+            assertTree(expr(terminalLeaf("-"), expr(value("3"), terminalLeaf("!"))), "-3!");
+            assertTree(expr(expr(terminalLeaf("-"), value("1")), terminalLeaf("*"), value("2")), "-1 * 2");
+        }
+
+        @Test
+        void operandAlone() {
+            assertTree(expr(createTree(List.of("Value"), List.of(
+                    terminalLeaf("("), expr(value("1")), terminalLeaf(")")
+            ))), "( 1 )");
+        }
+
+        @ParameterizedTest
+        @CsvSource({"1 + 2 * ( 3 - 4 ) ^ 2,true", "- - 1 !,true", "1 +,false", "* 2,false", "1 2,false", "( ),false"})
+        void matches(String input, boolean expected) {
+            assertEquals(expected, grammar.fitsGrammar(input));
+            assertEquals(expected, grammar.fitsGrammar(input, iterative));
+        }
+
+        @Test
+        void longChainsDoNotRecurse() {
+            String chain = String.join(" ^ ", Collections.nCopies(100_000, "1"));
+            assertTrue(grammar.fitsGrammar(chain));
+            assertTrue(grammar.fitsGrammar(chain, iterative));
+        }
+
+        @Test
+        void onlyWholeRuleBody() {
+            Map<String, Expression> nested = Map.of("S", sequence(
+                    precedence(terminal("[0-9]+"), level(Operator.Precedence.Fixity.LEFT, terminal("\\+"))),
+                    terminal(";")
+            ));
+            assertThrows(IllegalArgumentException.class, () -> new Grammar("S", nested));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class InputTest {
+
+    @Test
+    void positionsSkipWhitespace() {
+        Input input = Input.of("  ab  c\td ", "\\s");
+        assertEquals(4, input.length());
+        assertEquals("ab", input.getRemainingToken(0));
+        assertEquals("b", input.getRemainingToken(1));
+        assertEquals("c", input.getRemainingToken(2));
+        assertEquals("d", input.getRemainingToken(3));
+    }
+
+    @Test
+    void leftAndRight() {
+        Input input = Input.of("ab c", "\\s");
+        assertEquals("ab ", input.left(2));
+        assertEquals("c", input.right(2));
+        assertEquals("ab c", input.right(0));
+        assertEquals("", input.right(3));
+    }
+
+    @Test
+    void acceptsAnyCharSequence() {
+        StringBuilder text = new StringBuilder("10 + 10");
+        Input input = Input.of(text, "\\s");
+        assertEquals(5, input.length());
+        assertEquals("+", input.getRemainingToken(2));
+        assertEquals("10", input.getRemainingToken(3));
+    }
+
+    @Test
+    void textSpansTokens() {
+        Input input = Input.of("  ab  c\td ", "\\s");
+        assertEquals("b", input.text(1, 2));
+        assertEquals("bcd", input.text(1, 4));
+        assertEquals("", input.text(4, 4));
+    }
+
+    @Test
+    void scansDefaultWhitespaceLikeRegex() {
+        String text = " a\u000Bbc\r\n d\u00A0e\f\u001Cf  ";
+        Input scanned = Input.of(text, "\\s");
+        Input matched = Input.of(text, "[ \\t\\n\\x0B\\f\\r]");
+        assertEquals(matched.length(), scanned.length());
+        for (int position = 0; position < matched.length(); ++position) {
+            assertEquals(matched.getRemainingToken(position), scanned.getRemainingToken(position));
+        }
+    }
+}
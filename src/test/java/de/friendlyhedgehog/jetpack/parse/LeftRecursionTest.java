@@ -0,0 +1,74 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class LeftRecursionTest {
+
+    @Test
+    void directAndIndirect() {
+        Grammar grammar = new Grammar(
+                "x",
+                Map.of(
+                        "x", nonTerminal("expr"),
+                        "expr", orderedChoice(
+                                sequence(nonTerminal("x"), terminal("-"), nonTerminal("num")),
+                                nonTerminal("num")
+                        ),
+                        "num", sequence(nonTerminal("digit"), star(nonTerminal("digit"))),
+                        "digit", terminal("[0-9]"),
+                        "list", sequence(nonTerminal("list"), terminal(","), nonTerminal("num"))
+                )
+        );
+        assertEquals(Set.of("x", "expr", "list"), leftRecursiveRules(grammar));
+    }
+
+    @Test
+    void callsAfterNullablePrefix() {
+        Grammar grammar = new Grammar(
+                "a",
+                Map.of(
+                        "a", sequence(optional(terminal("b")), nonTerminal("c")),
+                        "c", orderedChoice(sequence(not(terminal("d")), nonTerminal("a")), terminal("c"))
+                )
+        );
+        assertEquals(Set.of("a", "c"), leftRecursiveRules(grammar));
+    }
+
+    @Test
+    void recursionAfterConsumingInputIsNotLeftRecursion() {
+        Grammar grammar = new Grammar(
+                "parens",
+                Map.of("parens", orderedChoice(
+                        sequence(terminal("\\("), nonTerminal("parens"), terminal("\\)")),
+                        empty()
+                ))
+        );
+        assertEquals(Set.of(), leftRecursiveRules(grammar));
+    }
+
+    private static Set<String> leftRecursiveRules(Grammar grammar) {
+        return LeftRecursion.components(grammar, FirstSets.of(grammar)).keySet();
+    }
+
+    @Test
+    void separateComponents() {
+        Grammar grammar = new Grammar(
+                "a",
+                Map.of(
+                        "a", orderedChoice(sequence(nonTerminal("a"), terminal("x")), nonTerminal("b")),
+                        "b", orderedChoice(sequence(nonTerminal("c"), terminal("y")), terminal("z")),
+                        "c", nonTerminal("b")
+                )
+        );
+        Map<String, Integer> components = LeftRecursion.components(grammar, FirstSets.of(grammar));
+        assertEquals(components.get("b"), components.get("c"));
+        assertNotEquals(components.get("a"), components.get("b"));
+    }
+}
@@ -0,0 +1,102 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.datatypes.Either;
+import de.friendlyhedgehog.jetpack.datatypes.Node;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LexerTest {
+
+    /**
+     * Statements <- Statement+
+     * Statement  <- "if" Identifier "then" Statement / Identifier "=" Value
+     * Value      <- Number / Identifier
+     * Identifier <- [a-z]+
+     * Number     <- [0-9]+
+     */
+    private final Grammar scannerless = new Grammar(
+            "Statements",
+            Map.of(
+                    "Statements", plus(nonTerminal("Statement")),
+                    "Statement", orderedChoice(
+                            sequence(terminalLiteral("if"), nonTerminal("Identifier"), terminalLiteral("then"),
+                                    nonTerminal("Statement")),
+                            sequence(nonTerminal("Identifier"), terminalLiteral("="), nonTerminal("Value"))
+                    ),
+                    "Value", orderedChoice(nonTerminal("Number"), nonTerminal("Identifier")),
+                    "Identifier", terminal("[a-z]+"),
+                    "Number", terminal("[0-9]+")
+            )
+    );
+    private final Grammar lexed = scannerless.withTokens(List.of("Identifier", "Number"));
+
+    @ParameterizedTest
+    @CsvSource({"x = 1", "if x then y=z", "ifx = 12 thenx = y", "x = 1 y = 2 if a then b = c"})
+    void keepsParseTrees(String input) {
+        assertEquals(scannerless.parse(input).getEither(), lexed.parse(input).getEither());
+        ParseOptions iterative = ParseOptions.defaults().withEngine(ParseOptions.Engine.ITERATIVE);
+        assertEquals(scannerless.parse(input).getEither(), lexed.parse(input, iterative).getEither());
+        assertEquals(scannerless.parse(input).getEither(), lexed.parseFlat(input).getEither().toNode());
+    }
+
+    @Test
+    void keywordsBeatTokenRules() {
+        assertTrue(lexed.fitsGrammar("if x then y = 1"));
+        assertFalse(lexed.fitsGrammar("if = 1"));
+        assertTrue(scannerless.fitsGrammar("if = 1"));
+    }
+
+    @Test
+    void positionsAreTokens() {
+        assertEquals("Could only match 3 of 4 tokens, expected \"=\" at position 4", lexed.parse("x=1 y").getOr());
+        assertEquals("Could not match rule Statements, expected one of [Identifier, Number] at position 2",
+                lexed.parse("x = =").getOr());
+    }
+
+    @Test
+    void reportsUnknownCharacters() {
+        assertEquals("No token matches at position 1", lexed.parse("x # 1").getOr());
+        assertFalse(lexed.fitsGrammar("x # 1"));
+    }
+
+    @Test
+    void lexesLongestMatch() {
+        Grammar operators = new Grammar(
+                "S",
+                Map.of("S", star(orderedChoice(terminalLiteral("="), terminalLiteral("=="), nonTerminal("Num"))),
+                        "Num", terminal("[0-9]+"))
+        ).withTokens(List.of("Num"));
+        List<Node<Symbol>> children = operators.parse("= ==12=").getEither().getChildren();
+        assertEquals(4, children.size());
+        assertEquals(new Symbol.Terminal("=="), children.get(1).getValue());
+        assertEquals(Symbol.nonTerminal("Num"), children.get(2).getValue());
+        assertEquals(new Symbol.Terminal("="), children.get(3).getValue());
+    }
+
+    @Test
+    void tokenRulesAreTerminals() {
+        Grammar grammar = new Grammar("S", Map.of("S", nonTerminal("T"), "T", sequence(terminal("a"), terminal("b"))))
+                .withTokens(List.of("T"));
+        assertThrows(RuntimeException.class, () -> grammar.fitsGrammar("a b"));
+        assertThrows(RuntimeException.class, () -> scannerless.withLayout("Identifier").withTokens(List.of("Number")));
+    }
+
+    @Test
+    void annotatedInGrammar() {
+        Grammar parsed = Grammar.of("""
+                Sum <- Num ("\\+" Num)*
+                @token Num <- "[0-9]+"
+                """).getEither();
+        assertEquals(List.of("Num"), parsed.tokens());
+        assertTrue(parsed.fitsGrammar("1+22 +3"));
+        assertInstanceOf(Either.Or.class, parsed.parse("1+a"));
+    }
+}
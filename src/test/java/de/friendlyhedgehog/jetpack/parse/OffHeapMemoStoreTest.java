@@ -0,0 +1,48 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapMemoStoreTest {
+
+    @Test
+    void missingKey() {
+        try (OffHeapMemoStore store = new OffHeapMemoStore()) {
+            assertEquals(ParsingStateLookup.ABSENT, store.get(0, 0));
+            assertEquals(ParsingStateLookup.ABSENT, store.getParseTree(0, 0));
+        }
+    }
+
+    @Test
+    void growsAndRemovesBefore() {
+        try (OffHeapMemoStore store = new OffHeapMemoStore()) {
+            for (int position = 0; position < 20_000; ++position) {
+                store.insert(position % 7, position, -position, position * 2);
+            }
+            assertEquals(20_000, store.size());
+            for (int position = 0; position < 20_000; ++position) {
+                assertEquals(-position, store.get(position % 7, position));
+                assertEquals(position * 2, store.getParseTree(position % 7, position));
+            }
+            store.removeBefore(15_000);
+            assertEquals(5_000, store.size());
+            assertEquals(ParsingStateLookup.ABSENT, store.get(14_999 % 7, 14_999));
+            for (int position = 15_000; position < 20_000; ++position) {
+                assertEquals(-position, store.get(position % 7, position));
+            }
+            store.insert(0, 30_000, 1);
+            assertEquals(1, store.get(0, 30_000));
+            assertEquals(ParsingStateLookup.ABSENT, store.getParseTree(0, 30_000));
+        }
+    }
+
+    @Test
+    void capacityIsBounded() {
+        assertEquals(1024, OffHeapMemoStore.capacityFor(0));
+        assertEquals(4096, OffHeapMemoStore.capacityFor(1025));
+        assertEquals(OffHeapMemoStore.MAX_CAPACITY, OffHeapMemoStore.capacityFor(OffHeapMemoStore.MAX_CAPACITY / 2));
+        assertThrows(RuntimeException.class,
+                () -> OffHeapMemoStore.capacityFor(OffHeapMemoStore.MAX_CAPACITY / 2 + 1));
+    }
+}
@@ -3,11 +3,12 @@ package de.friendlyhedgehog.jetpack.parse;
 import de.friendlyhedgehog.jetpack.datatypes.Either;
 import de.friendlyhedgehog.jetpack.grammar.Expression;
 import de.friendlyhedgehog.jetpack.grammar.Operator;
-import de.friendlyhedgehog.jetpack.grammar.Symbol;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
 
+import java.util.Map;
+
 import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -20,11 +21,10 @@ public class OperatorTest {
 
         @Test
         void testMatchNone() {
-            ConsumedExpression consume = EvaluateOperators.applyOperator(
+            ConsumedExpression consume = applyOperator(
                             new Operator.Star(terminal("a")),
                             getInput("ba"),
-                            0,
-                            createExpressionEvaluator()
+                            0
                     )
                     .getEither();
             assertEquals(0, consume.parsePosition());
@@ -32,11 +32,10 @@ public class OperatorTest {
 
         @Test
         void testMatchMultiple() {
-            ConsumedExpression consume = EvaluateOperators.applyOperator(
+            ConsumedExpression consume = applyOperator(
                             new Operator.Star(terminal("a")),
                             getInput("baaaab"),
-                            1,
-                            createExpressionEvaluator()
+                            1
                     )
                     .getEither();
             assertEquals(5, consume.parsePosition());
@@ -50,23 +49,13 @@ public class OperatorTest {
         }
     }
 
-    private ExpressionEvaluator createExpressionEvaluator() {
-        return (expression, input, currentPosition) -> switch (expression) {
-            case Operator op -> EvaluateOperators.applyOperator(
-                    op,
-                    input,
-                    currentPosition,
-                    createExpressionEvaluator()
-            );
-            case Symbol symbol -> terminalEvaluator(input, currentPosition, symbol);
-        };
-    }
-
-    private Either<ConsumedExpression, String> terminalEvaluator(Input input, int currentPositio, Symbol symbol) {
-        return switch (symbol) {
-            case Symbol.Terminal t -> EvaluateTerminal.applyTerminal(t.symbol(), input, currentPositio);
-            case null, default -> throw new RuntimeException();
-        };
+    private static Either<ConsumedExpression, String> applyOperator(Expression operator, Input input, int position) {
+        return CompiledGrammar.evaluate(
+                CompiledGrammar.compile(operator, Map.of()),
+                input,
+                position,
+                ParsingState.of()
+        );
     }
 
     @Nested
@@ -74,14 +63,13 @@ public class OperatorTest {
 
         @Test
         void testOkFirst() {
-            ConsumedExpression consume = EvaluateOperators.applyOperator(
+            ConsumedExpression consume = applyOperator(
                     new Operator.OrderedChoice(
                             terminal("a"),
                             terminal("b")
                     ),
                     getInput("a"),
-                    0,
-                    createExpressionEvaluator()
+                    0
             ).getEither();
             assertEquals(1, consume.parsePosition());
         }
@@ -89,22 +77,20 @@ public class OperatorTest {
 
         @Test
         void testOkSecond() {
-            ConsumedExpression consume = EvaluateOperators.applyOperator(
+            ConsumedExpression consume = applyOperator(
                     new Operator.OrderedChoice(terminal("a"), terminal("b")),
                     getInput("b"),
-                    0,
-                    createExpressionEvaluator()
+                    0
             ).getEither();
             assertEquals(1, consume.parsePosition());
         }
 
         @Test
         void testFail() {
-            var consume = EvaluateOperators.applyOperator(
+            var consume = applyOperator(
                     new Operator.OrderedChoice(terminal("a"), terminal("b")),
                     getInput("c"),
-                    0,
-                    createExpressionEvaluator()
+                    0
             );
             assertInstanceOf(Either.Or.class, consume);
         }
@@ -115,14 +101,13 @@ public class OperatorTest {
 
         @Test
         void conditionSatisfied () {
-            Either<ConsumedExpression, String> consume = EvaluateOperators.applyOperator(
+            Either<ConsumedExpression, String> consume = applyOperator(
                     sequence(
                             and(sequence(plus(terminal("\\w")), terminalLiteral("!"))),
                             plus(terminal(".+"))
                     ),
                     getInput("this should match!"),
-                    0,
-                    createExpressionEvaluator()
+                    0
             );
             assertInstanceOf( Either.This.class, consume);
             ConsumedExpression either = consume.getEither();
@@ -131,14 +116,13 @@ public class OperatorTest {
 
         @Test
         void conditionViolated () {
-            Either<ConsumedExpression, String> consume = EvaluateOperators.applyOperator(
+            Either<ConsumedExpression, String> consume = applyOperator(
                     sequence(
                             and(sequence(plus(terminal("\\w")), terminalLiteral("!"))),
                             plus(terminal(".+"))
                     ),
                     getInput("this should not match"),
-                    0,
-                    createExpressionEvaluator()
+                    0
             );
             assertInstanceOf( Either.Or.class, consume);
         }
@@ -0,0 +1,98 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParsingStateTest {
+
+    @Test
+    void compactsWithoutBacktrackPoints() {
+        try (ParsingState state = filled()) {
+            state.commit(100);
+            assertEquals(ParsingState.MIN_COMPACTION_SIZE - 100, state.getLookup().size());
+            assertEquals(ParsingStateLookup.ABSENT, state.getLookup().get(0, 99));
+            assertEquals(101, state.getLookup().get(0, 100));
+        }
+    }
+
+    @Test
+    void keepsEntriesWhileBacktrackingIsPossible() {
+        try (ParsingState state = filled()) {
+            state.enterBacktrackPoint();
+            state.commit(100);
+            assertEquals(ParsingState.MIN_COMPACTION_SIZE, state.getLookup().size());
+            state.exitBacktrackPoint();
+            boolean outerCut = state.enterChoice();
+            state.commit(100);
+            assertEquals(ParsingState.MIN_COMPACTION_SIZE, state.getLookup().size());
+            state.cut(100);
+            assertEquals(ParsingState.MIN_COMPACTION_SIZE - 100, state.getLookup().size());
+            state.exitChoice(outerCut);
+            assertEquals(0, state.getBacktrackPoints());
+        }
+    }
+
+    @Test
+    void amortizesCompaction() {
+        try (ParsingState state = filled()) {
+            state.commit(1);
+            state.commit(2);
+            assertEquals(ParsingState.MIN_COMPACTION_SIZE - 1, state.getLookup().size());
+        }
+    }
+
+    @Test
+    void releasesTreeWithDiscardedEntries() {
+        RuleNode rule = new RuleNode(0, "R");
+        Input input = Input.of("a b", "\\s");
+        NodeTreeBuffer tree = new NodeTreeBuffer();
+        tree.addTerminal(input, 0, 1);
+        int early = tree.wrapMemoized(0, rule, 99, 100);
+        tree.addTerminal(input, 1, 2);
+        int late = tree.wrapMemoized(1, rule, 100, 101);
+        tree.truncate(0);
+        try (ParsingState state = filled()) {
+            state.buildTree(tree);
+            state.commit(100);
+        }
+        tree.add(late);
+        assertEquals(1, tree.nodes().size());
+        assertThrows(NullPointerException.class, () -> tree.add(early));
+    }
+
+    @Test
+    void reusesGrowingsPerDepth() {
+        RuleNode outer = new RuleNode(0, "Outer");
+        RuleNode inner = new RuleNode(1, "Inner");
+        try (ParsingState state = ParsingState.of()) {
+            state.enterGrowing();
+            state.growIteration(outer, 0, 0);
+            ParsingState.Growing growing = state.getGrowing();
+            growing.involve(inner);
+            assertTrue(growing.isInvolved(inner));
+
+            state.enterGrowing();
+            state.growIteration(inner, 2, 1);
+            ParsingState.Growing nested = state.getGrowing();
+            assertNotSame(growing, nested);
+            assertFalse(nested.isInvolved(outer));
+            state.exitGrowing();
+
+            state.growIteration(outer, 0, 0);
+            assertSame(growing, state.getGrowing());
+            assertTrue(growing.isInvolved(outer));
+            assertFalse(growing.isInvolved(inner));
+            assertEquals(0, growing.position());
+            state.exitGrowing();
+        }
+    }
+
+    private static ParsingState filled() {
+        ParsingState state = ParsingState.of();
+        for (int position = 0; position < ParsingState.MIN_COMPACTION_SIZE; ++position) {
+            state.getLookup().insert(0, position, position + 1);
+        }
+        return state;
+    }
+}
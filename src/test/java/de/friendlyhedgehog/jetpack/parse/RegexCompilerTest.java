@@ -0,0 +1,65 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegexCompilerTest {
+
+    private static final List<String> TEXTS = List.of(
+            "", "a", "ab", "abc", "aab", "abab", "ba", "Abc", "AB", "123", "1a2", "x_9", "\"quoted\"", "\"open",
+            "a-b", "+-", "a\nb", "äb", " ", "aaaa", "abcabc", "42.5", "_", "bb"
+    );
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "[0-9]+", "[a-zA-Z_]+", "\"[^\"]+\"", "a|ab", "ab|a", "a*ab", "a*(ab)?", "(a|ab)(c|bcd)?", "a+?",
+            "a??b", "(?:ab)*", "(a?)*", "a{2}", "a{1,3}", "a{2,}", "a{0,2}?", "\\d+\\.\\d+", "\\w+", "\\W", "\\s*a",
+            ".", ".b", "[a-c\\-]+", "[-+]", "[^a-z]+", "[\\d_]+", "x|", "|x", "(a|b|ab)+", "[ä]b", "a|b|c|abc",
+            "(a|b??)*", "(a??)*", "(|a)*", "([ab]??)*b", "(a?){2}"
+    })
+    void matchesLikePattern(String pattern) {
+        for (boolean caseSensitive : new boolean[]{true, false}) {
+            TerminalMatcher terminal = RegexCompiler.compile(pattern, caseSensitive)
+                    .<TerminalMatcher>map(compiled -> compiled)
+                    .orElseGet(() -> TerminalMatcher.of(new Symbol.Terminal(pattern, caseSensitive)));
+            Pattern compiled = Pattern.compile(pattern, caseSensitive ? 0 : Pattern.CASE_INSENSITIVE);
+            for (String text : TEXTS) {
+                for (int from = 0; from <= text.length(); ++from) {
+                    Matcher matcher = compiled.matcher(text).region(from, text.length());
+                    int expected = matcher.lookingAt() ? matcher.end() : TerminalMatcher.NO_MATCH;
+                    assertEquals(expected, terminal.match(text, from, text.length()),
+                            () -> pattern + " on " + text + ", case sensitive: " + caseSensitive);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"^a", "a$", "(a)\\1", "(?=a)a", "a*+", "[a&&b]", "[a[b]]", "\\p{L}", "\\bx", "a{", "(a",
+            "(a??)*", "(|a)+", "(a*){2}"})
+    void leavesUnsupportedPatternsToPattern(String pattern) {
+        assertTrue(RegexCompiler.compile(pattern, true).isEmpty(), pattern);
+    }
+
+    @Test
+    void grammarTerminalsUseDfa() {
+        for (String pattern : List.of("[0-9]+", "[a-zA-Z_]+", "\"[^\"]+\"")) {
+            assertInstanceOf(TerminalMatcher.Dfa.class,
+                    TerminalMatcher.of(new Symbol.Terminal(pattern)));
+        }
+    }
+
+    @Test
+    void statesAreShared() {
+        TerminalMatcher.Dfa dfa = RegexCompiler.compile("[0-9]+", true).orElseThrow();
+        assertEquals(2, dfa.states());
+    }
+}
@@ -0,0 +1,97 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import de.friendlyhedgehog.jetpack.datatypes.Either;
+import de.friendlyhedgehog.jetpack.datatypes.Node;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamParserTest {
+
+    /**
+     * Items <- Item*
+     * Item  <- "a" "b" / "a" !"b" / List
+     * List  <- "\[" "[0-9]+"* "\]"
+     */
+    private final Grammar grammar = new Grammar(
+            "Items",
+            Map.of(
+                    "Items", star(nonTerminal("Item")),
+                    "Item", orderedChoice(
+                            sequence(terminal("a"), terminal("b")),
+                            sequence(terminal("a"), not(terminal("b"))),
+                            nonTerminal("List")
+                    ),
+                    "List", sequence(terminal("\\["), star(terminal("[0-9]+")), terminal("\\]"))
+            )
+    );
+
+    @ParameterizedTest
+    @CsvSource({"RECURSIVE", "ITERATIVE"})
+    void emitsChildrenOfParse(ParseOptions.Engine engine) {
+        String input = "a " + "a b ".repeat(StreamParser.CHUNK_SIZE / 2) + "[ 1 2 3 ] a";
+        ParseOptions options = ParseOptions.defaults().withEngine(engine);
+        List<Node<Symbol>> emitted = new ArrayList<>();
+        Either<Integer, String> result = grammar.parseStream(new StringReader(input), options, emitted::add);
+        assertEquals(grammar.parse(input).getEither().getChildren(), emitted);
+        assertEquals(emitted.size(), result.getEither());
+    }
+
+    @Test
+    void elementSpansWindows() {
+        String input = "a [ " + "12345 ".repeat(3 * StreamParser.CHUNK_SIZE) + "] a b";
+        List<Node<Symbol>> emitted = new ArrayList<>();
+        assertEquals(3, grammar.parseStream(new StringReader(input), emitted::add).getEither());
+        assertEquals(3 * StreamParser.CHUNK_SIZE + 2, emitted.get(1).getChildren().getFirst().getChildren().size());
+    }
+
+    @Test
+    void streamsTokens() {
+        Grammar numbers = new Grammar("S", Map.of("S", star(nonTerminal("N")), "N", terminal("[0-9]+")))
+                .withTokens(List.of("N"));
+        String input = "1 22 333 ".repeat(StreamParser.CHUNK_SIZE / 4);
+        List<Node<Symbol>> emitted = new ArrayList<>();
+        assertEquals(3 * (StreamParser.CHUNK_SIZE / 4), numbers.parseStream(new StringReader(input), emitted::add)
+                .getEither());
+        assertEquals(numbers.parse(input).getEither().getChildren(), emitted);
+    }
+
+    @Test
+    void readsChannel() {
+        byte[] input = "a b\na\n[ 7 ]\n".getBytes(StandardCharsets.UTF_8);
+        List<Node<Symbol>> emitted = new ArrayList<>();
+        grammar.parseStream(Channels.newChannel(new ByteArrayInputStream(input)), emitted::add);
+        assertEquals(3, emitted.size());
+    }
+
+    @Test
+    void reportsMismatch() {
+        String input = "a b ".repeat(StreamParser.CHUNK_SIZE) + "b a";
+        List<Node<Symbol>> emitted = new ArrayList<>();
+        Either<Integer, String> result = grammar.parseStream(new StringReader(input), emitted::add);
+        assertEquals("Could only match " + 2 * StreamParser.CHUNK_SIZE + " characters", result.getOr());
+        assertEquals(StreamParser.CHUNK_SIZE, emitted.size());
+    }
+
+    @Test
+    void requiresRepetition() {
+        Grammar single = new Grammar("S", Map.of("S", terminal("a")));
+        assertInstanceOf(Either.Or.class, single.parseStream(new StringReader("a"), _ -> fail("No tree expected")));
+        Grammar plus = new Grammar("S", Map.of("S", plus(terminal("a"))));
+        assertInstanceOf(Either.Or.class, plus.parseStream(new StringReader(" "), _ -> fail("No tree expected")));
+        assertEquals(2, plus.parseStream(new StringReader("a a"), _ -> {
+        }).getEither());
+    }
+}
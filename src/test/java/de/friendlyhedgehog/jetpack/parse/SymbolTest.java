@@ -1,12 +1,15 @@
 package de.friendlyhedgehog.jetpack.parse;
 
 import de.friendlyhedgehog.jetpack.datatypes.Either;
+import de.friendlyhedgehog.jetpack.grammar.Symbol;
 import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.fail;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class SymbolTest {
 
@@ -19,7 +22,8 @@ public class SymbolTest {
                 "Multiple Possible matches,a,aaaa,2,3",
                 "Longer Terminal,static,public static void main,6,12",
                 "Group of numbers,[0-9]+,1234Hello,0,4",
-                "Greedy Star,a*,bcdf,0,0"
+                "Greedy Star,a*,bcdf,0,0",
+                "Ignores case,STATIC,public static void main,6,12"
         })
         void testOk(
                 String testMessage,
@@ -28,11 +32,10 @@ public class SymbolTest {
                 int initialOffset,
                 int expectedOffsetConsumed
         ) {
-            Either<ConsumedExpression, String> consume = EvaluateTerminal.applyTerminal(
-                    symbol, Input.of(
-                            inputString,
-                            "\\s"
-                    ), initialOffset
+            Either<ConsumedExpression, String> consume = applyTerminal(
+                    new Symbol.Terminal(symbol),
+                    Input.of(inputString, "\\s"),
+                    initialOffset
             );
 
             if (consume instanceof Either.This<ConsumedExpression, String> actual) {
@@ -41,5 +44,67 @@ public class SymbolTest {
                 fail("Failed to parse: " + testMessage, new RuntimeException(consume.getOr()));
             }
         }
+
+        @ParameterizedTest
+        @CsvSource(value = {
+                "Does not search,a,ba,0",
+                "Does not span tokens,ab,a b,0",
+                "Case sensitive literal,Static,static,0",
+                "Case sensitive regex,[A-Z]+,abc,0"
+        })
+        void testNoMatch(String testMessage, String symbol, String inputString, int initialOffset) {
+            Either<ConsumedExpression, String> consume = applyTerminal(
+                    new Symbol.Terminal(symbol, true),
+                    Input.of(inputString, "\\s"),
+                    initialOffset
+            );
+            assertInstanceOf(Either.Or.class, consume, testMessage);
+        }
+
+        private static Either<ConsumedExpression, String> applyTerminal(
+                Symbol.Terminal terminal,
+                Input input,
+                int position
+        ) {
+            return CompiledGrammar.evaluate(
+                    new TerminalNode(0, TerminalMatcher.of(terminal)),
+                    input,
+                    position,
+                    ParsingState.of()
+            );
+        }
+    }
+
+    @Nested
+    class TerminalMatcherTest {
+
+        @Test
+        void quotedLiteral() {
+            assertEquals(Optional.of("a+b"), TerminalMatcher.literal("\\Qa+b\\E"));
+        }
+
+        @Test
+        void patternWithoutMetaCharacters() {
+            assertEquals(Optional.of("kWh100km"), TerminalMatcher.literal("kWh100km"));
+        }
+
+        @Test
+        void regex() {
+            assertEquals(Optional.empty(), TerminalMatcher.literal("[0-9]+"));
+        }
+
+        @Test
+        void literalsUseCharacterComparison() {
+            assertInstanceOf(
+                    TerminalMatcher.Literal.class,
+                    TerminalMatcher.of(new Symbol.Terminal("\\Q<-\\E"))
+            );
+        }
+
+        @Test
+        void matchesRegionOnly() {
+            TerminalMatcher matcher = TerminalMatcher.of(new Symbol.Terminal("[0-9]+"));
+            assertEquals(3, matcher.match("a1234", 1, 3));
+        }
     }
 }
@@ -0,0 +1,43 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TerminalCacheTest {
+
+    @Test
+    void storesMatchesAndFailures() {
+        TerminalCache cache = new TerminalCache(3, 100);
+        assertEquals(TerminalCache.UNKNOWN, cache.get(0, 5));
+        cache.put(0, 5, 8);
+        cache.put(2, 5, ParserNode.FAIL);
+        assertEquals(8, cache.get(0, 5));
+        assertEquals(TerminalCache.UNKNOWN, cache.get(1, 5));
+        assertEquals(ParserNode.FAIL, cache.get(2, 5));
+        assertEquals(TerminalCache.UNKNOWN, cache.get(0, 6));
+    }
+
+    @Test
+    void positionEvictsPositionOfSameSlot() {
+        TerminalCache cache = new TerminalCache(2, 4);
+        cache.put(0, 1, 2);
+        cache.put(1, 9, ParserNode.FAIL);
+        assertEquals(TerminalCache.UNKNOWN, cache.get(0, 1));
+        assertEquals(TerminalCache.UNKNOWN, cache.get(0, 9));
+        assertEquals(ParserNode.FAIL, cache.get(1, 9));
+        cache.put(0, 1, ParserNode.FAIL);
+        assertEquals(ParserNode.FAIL, cache.get(0, 1));
+        assertEquals(TerminalCache.UNKNOWN, cache.get(1, 1));
+    }
+
+    @Test
+    void terminalsBeyondOneWord() {
+        TerminalCache cache = new TerminalCache(130, 10);
+        cache.put(129, 3, 4);
+        cache.put(65, 3, ParserNode.FAIL);
+        assertEquals(TerminalCache.UNKNOWN, cache.get(1, 3));
+        assertEquals(4, cache.get(129, 3));
+        assertEquals(ParserNode.FAIL, cache.get(65, 3));
+    }
+}
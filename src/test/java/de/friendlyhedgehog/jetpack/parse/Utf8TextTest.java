@@ -0,0 +1,73 @@
+package de.friendlyhedgehog.jetpack.parse;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static de.friendlyhedgehog.jetpack.grammar.Expression.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Utf8TextTest {
+
+    private static final String MIXED = "a-ä€😀\n".repeat(400) + "end";
+
+    @Test
+    void readsLikeString() throws CharacterCodingException {
+        Utf8Text text = of(MIXED);
+        assertEquals(MIXED.length(), text.length());
+        for (int i = 0; i < MIXED.length(); ++i) {
+            assertEquals(MIXED.charAt(i), text.charAt(i), "at " + i);
+        }
+        for (int i = MIXED.length() - 1; i >= 0; --i) {
+            assertEquals(MIXED.charAt(i), text.charAt(i), "at " + i);
+        }
+        assertEquals(MIXED, text.toString());
+    }
+
+    @Test
+    void seeksAnywhere() throws CharacterCodingException {
+        Utf8Text text = of(MIXED);
+        Random random = new Random(42);
+        for (int i = 0; i < 2_000; ++i) {
+            int start = random.nextInt(MIXED.length() + 1);
+            int end = start + random.nextInt(MIXED.length() - start + 1);
+            assertEquals(MIXED.substring(start, end), text.subSequence(start, end).toString(), start + " to " + end);
+            if (start < MIXED.length()) {
+                assertEquals(MIXED.charAt(start), text.charAt(start), "at " + start);
+            }
+        }
+    }
+
+    @Test
+    void splitsSupplementaryCharacters() throws CharacterCodingException {
+        Utf8Text text = of("x😀y");
+        assertEquals(4, text.length());
+        assertEquals("\uD83D", text.subSequence(1, 2).toString());
+        assertEquals("\uDE00y", text.subSequence(2, 4).toString());
+        assertEquals("", text.subSequence(2, 2).toString());
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        byte[] truncated = "ab€".getBytes(StandardCharsets.UTF_8);
+        assertThrows(CharacterCodingException.class,
+                () -> Utf8Text.of(MemorySegment.ofArray(Arrays.copyOf(truncated, truncated.length - 1))));
+        assertThrows(CharacterCodingException.class,
+                () -> Utf8Text.of(MemorySegment.ofArray(new byte[]{'a', (byte) 0xC0, (byte) 0xAF})));
+    }
+
+    @Test
+    void parsesLikeString() throws CharacterCodingException {
+        Grammar grammar = new Grammar("S", Map.of("S", plus(terminal("[^\\s]+"))));
+        assertEquals(grammar.parse(MIXED).getEither(), grammar.parse(of(MIXED)).getEither());
+    }
+
+    private static Utf8Text of(String text) throws CharacterCodingException {
+        return Utf8Text.of(MemorySegment.ofArray(text.getBytes(StandardCharsets.UTF_8)));
+    }
+}